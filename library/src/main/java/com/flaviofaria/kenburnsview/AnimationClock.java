@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+/**
+ * Time source of the Ken Burns animation. The default one is {@link #SYSTEM}; other
+ * implementations let the animation be driven by a simulated or a shared clock.
+ */
+public interface AnimationClock {
+
+    /** Clock that reads the system time. */
+    public static final AnimationClock SYSTEM = new AnimationClock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * Gets the current time of this clock.
+     * @return the current time, in milliseconds.
+     */
+    public long currentTimeMillis();
+
+}
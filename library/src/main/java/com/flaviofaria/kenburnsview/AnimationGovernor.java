@@ -0,0 +1,441 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapts the animation of {@link KenBurnsView}s to the power and thermal state of the
+ * device. Depending on the battery temperature, the battery saver and the charging state,
+ * it either lets the animation run normally, throttles it by lowering the frame rate and
+ * stretching transitions, or pauses it entirely.
+ * <p>
+ * The battery temperature is used as the thermal signal, since it's available on every
+ * API level. Since it changes slowly around a threshold, the animation only goes back to a
+ * lower level once the temperature drops a hysteresis below the threshold that raised it.
+ * Call {@link #start()} to start watching the device state and {@link #stop()} when the
+ * views are no longer shown. Views are held weakly, so a governor that outlives an
+ * activity doesn't leak it.
+ */
+public class AnimationGovernor {
+
+    /** The animation runs normally. */
+    public static final int LEVEL_NORMAL = 0;
+    /** The animation runs at a lower frame rate and with longer transitions. */
+    public static final int LEVEL_THROTTLED = 1;
+    /** The animation is paused. */
+    public static final int LEVEL_PAUSED = 2;
+
+    /** Default frame rate, in frames per second, when the animation runs normally. */
+    public static final int DEFAULT_FRAME_RATE = 60;
+    /** Default frame rate, in frames per second, when the animation is throttled. */
+    public static final int DEFAULT_THROTTLED_FRAME_RATE = 30;
+    /** Default factor transitions are stretched by when the animation is throttled. */
+    public static final float DEFAULT_THROTTLED_DURATION_SCALE = 1.5f;
+    /** Default battery temperature, in Celsius, above which the animation is throttled. */
+    public static final float DEFAULT_THROTTLE_TEMPERATURE = 40;
+    /** Default battery temperature, in Celsius, above which the animation is paused. */
+    public static final float DEFAULT_PAUSE_TEMPERATURE = 45;
+    /** Default amount, in Celsius, the battery temperature must drop below a threshold
+     *  before the animation leaves the level the threshold raised it to. */
+    public static final float DEFAULT_TEMPERATURE_HYSTERESIS = 2;
+
+    /** The context used to watch the device state. */
+    private final Context mContext;
+
+    /** The views this governor controls. Cleared references are dropped as they're found. */
+    private final List<WeakReference<KenBurnsView>> mViews =
+            new ArrayList<WeakReference<KenBurnsView>>();
+
+    /** A {@link GovernorListener} to be notified of every decision. */
+    private GovernorListener mGovernorListener;
+
+    /** Receives battery and battery saver updates. */
+    private final BroadcastReceiver mReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+                updateBatteryState(intent);
+            }
+            updatePowerSaveMode();
+            updateLevel();
+        }
+    };
+
+    /** Indicates whether {@link #mReceiver} is registered. */
+    private boolean mStarted;
+
+    /** The current decision, one of the {@code LEVEL_*} constants. */
+    private int mLevel = LEVEL_NORMAL;
+    /** The level the battery temperature alone calls for. */
+    private int mThermalLevel = LEVEL_NORMAL;
+
+    /** The last known battery temperature, in Celsius. */
+    private float mTemperature = Float.NaN;
+    /** Whether the device was plugged to a power source at the last battery update. */
+    private boolean mCharging = true;
+    /** Whether the battery saver was on at the last update. */
+    private boolean mPowerSaveMode;
+
+    /** The frame rate, in frames per second, of throttled animations. */
+    private int mThrottledFrameRate = DEFAULT_THROTTLED_FRAME_RATE;
+    /** The factor transitions are stretched by in throttled animations. */
+    private float mThrottledDurationScale = DEFAULT_THROTTLED_DURATION_SCALE;
+    /** The battery temperature, in Celsius, above which the animation is throttled. */
+    private float mThrottleTemperature = DEFAULT_THROTTLE_TEMPERATURE;
+    /** The battery temperature, in Celsius, above which the animation is paused. */
+    private float mPauseTemperature = DEFAULT_PAUSE_TEMPERATURE;
+    /** The amount, in Celsius, the battery temperature must drop below a threshold
+     *  before the animation leaves the level the threshold raised it to. */
+    private float mTemperatureHysteresis = DEFAULT_TEMPERATURE_HYSTERESIS;
+    /** Whether the animation is throttled while the battery saver is on. */
+    private boolean mThrottleOnPowerSave = true;
+    /** Whether the animation is throttled while the device isn't charging. */
+    private boolean mThrottleOnBattery;
+
+
+    public AnimationGovernor(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+
+    /**
+     * Starts watching the device state and applying decisions to the controlled views.
+     */
+    public void start() {
+        if (mStarted) {
+            return;
+        }
+        mStarted = true;
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        }
+        // The battery broadcast is sticky, so the current state is known right away.
+        Intent battery = mContext.registerReceiver(mReceiver, filter);
+        if (battery != null) {
+            updateBatteryState(battery);
+        }
+        updatePowerSaveMode();
+        updateLevel();
+    }
+
+
+    /**
+     * Stops watching the device state and lets the controlled views run normally.
+     */
+    public void stop() {
+        if (!mStarted) {
+            return;
+        }
+        mStarted = false;
+        mContext.unregisterReceiver(mReceiver);
+        mThermalLevel = LEVEL_NORMAL;
+        setLevel(LEVEL_NORMAL);
+    }
+
+
+    /**
+     * Puts a {@link KenBurnsView} under the control of this governor.
+     * @param view the view to be controlled.
+     */
+    public void addView(KenBurnsView view) {
+        if (indexOf(view) < 0) {
+            mViews.add(new WeakReference<KenBurnsView>(view));
+            applyLevel(view);
+        }
+    }
+
+
+    /**
+     * Releases a {@link KenBurnsView} from the control of this governor,
+     * letting it run normally.
+     * @param view the view to be released.
+     */
+    public void removeView(KenBurnsView view) {
+        int index = indexOf(view);
+        if (index >= 0) {
+            mViews.remove(index);
+            view.applyGovernorDecision(DEFAULT_FRAME_RATE, 1, false);
+        }
+    }
+
+
+    /**
+     * Finds a controlled view, dropping the views that were garbage collected.
+     * @param view the view to find.
+     * @return its index in {@link #mViews}, or {@code -1} if it isn't controlled.
+     */
+    private int indexOf(KenBurnsView view) {
+        for (int i = mViews.size() - 1; i >= 0; i--) {
+            if (mViews.get(i).get() == null) {
+                mViews.remove(i);
+            }
+        }
+        for (int i = 0; i < mViews.size(); i++) {
+            if (mViews.get(i).get() == view) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     * Sets how the animation is throttled.
+     * @param frameRate the frame rate, in frames per second, of throttled animations.
+     * @param durationScale the factor transitions are stretched by in throttled animations.
+     *                      Timelines anchored to a shared clock aren't stretched.
+     */
+    public void setThrottling(int frameRate, float durationScale) {
+        if (frameRate <= 0 || durationScale <= 0) {
+            throw new IllegalArgumentException("Frame rate and duration scale must be positive");
+        }
+        mThrottledFrameRate = frameRate;
+        mThrottledDurationScale = durationScale;
+        applyLevel();
+    }
+
+
+    /**
+     * Sets the battery temperatures the animation is throttled and paused at.
+     * @param throttleTemperature the temperature, in Celsius, above which
+     *                            the animation is throttled.
+     * @param pauseTemperature the temperature, in Celsius, above which
+     *                         the animation is paused.
+     */
+    public void setTemperatureThresholds(float throttleTemperature, float pauseTemperature) {
+        mThrottleTemperature = throttleTemperature;
+        mPauseTemperature = pauseTemperature;
+        updateLevel();
+    }
+
+
+    /**
+     * Sets how far the battery temperature must drop below a threshold before the
+     * animation leaves the level the threshold raised it to, so a temperature
+     * hovering around a threshold doesn't toggle the animation back and forth.
+     * @param hysteresis the amount, in Celsius. It defaults to
+     *                   {@link #DEFAULT_TEMPERATURE_HYSTERESIS}.
+     */
+    public void setTemperatureHysteresis(float hysteresis) {
+        if (hysteresis < 0) {
+            throw new IllegalArgumentException("Hysteresis can't be negative");
+        }
+        mTemperatureHysteresis = hysteresis;
+        updateLevel();
+    }
+
+
+    /**
+     * Sets whether the animation is throttled while the battery saver is on.
+     * This is on by default.
+     * @param throttle {@code true} to throttle the animation while the battery saver is on.
+     */
+    public void setThrottleOnPowerSave(boolean throttle) {
+        mThrottleOnPowerSave = throttle;
+        updateLevel();
+    }
+
+
+    /**
+     * Sets whether the animation is throttled while the device isn't charging.
+     * This is off by default.
+     * @param throttle {@code true} to throttle the animation while running on battery.
+     */
+    public void setThrottleOnBattery(boolean throttle) {
+        mThrottleOnBattery = throttle;
+        updateLevel();
+    }
+
+
+    public void setGovernorListener(GovernorListener governorListener) {
+        mGovernorListener = governorListener;
+    }
+
+
+    /**
+     * Gets the current decision.
+     * @return one of {@link #LEVEL_NORMAL}, {@link #LEVEL_THROTTLED} or {@link #LEVEL_PAUSED}.
+     */
+    public int getLevel() {
+        return mLevel;
+    }
+
+
+    /**
+     * Gets the last known battery temperature.
+     * @return the temperature, in Celsius, or {@link Float#NaN} if it's unknown.
+     */
+    public float getTemperature() {
+        return mTemperature;
+    }
+
+
+    /**
+     * Checks whether the device was charging at the last battery update.
+     * @return {@code true} if the device is plugged to a power source.
+     */
+    public boolean isCharging() {
+        return mCharging;
+    }
+
+
+    /**
+     * Checks whether the battery saver was on at the last update.
+     * @return {@code true} if the battery saver is on.
+     */
+    public boolean isPowerSaveMode() {
+        return mPowerSaveMode;
+    }
+
+
+    /**
+     * Reads the temperature and the charging state from a battery update.
+     * @param intent the sticky {@link Intent#ACTION_BATTERY_CHANGED} intent.
+     */
+    private void updateBatteryState(Intent intent) {
+        int temperature = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, Integer.MIN_VALUE);
+        // The temperature is reported in tenths of a degree Celsius.
+        mTemperature = temperature != Integer.MIN_VALUE ? temperature / 10f : Float.NaN;
+        mCharging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+
+    /**
+     * Reads the battery saver state, available from Lollipop on.
+     */
+    private void updatePowerSaveMode() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            PowerManager pm = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
+            mPowerSaveMode = pm != null && pm.isPowerSaveMode();
+        }
+    }
+
+
+    /**
+     * Decides the level of the animation according to the current device state.
+     */
+    private void updateLevel() {
+        if (!mStarted) {
+            return;
+        }
+        mThermalLevel = getThermalLevel();
+        int level = mThermalLevel;
+        if (level == LEVEL_NORMAL && ((mThrottleOnPowerSave && mPowerSaveMode)
+                || (mThrottleOnBattery && !mCharging))) {
+            level = LEVEL_THROTTLED;
+        }
+        setLevel(level);
+    }
+
+
+    /**
+     * Decides the level the battery temperature calls for. A level raised by a
+     * threshold is kept until the temperature drops {@link #mTemperatureHysteresis}
+     * below it.
+     * @return one of the {@code LEVEL_*} constants.
+     */
+    private int getThermalLevel() {
+        if (mTemperature >= mPauseTemperature || (mThermalLevel == LEVEL_PAUSED
+                && mTemperature > mPauseTemperature - mTemperatureHysteresis)) {
+            return LEVEL_PAUSED;
+        }
+        if (mTemperature >= mThrottleTemperature || (mThermalLevel != LEVEL_NORMAL
+                && mTemperature > mThrottleTemperature - mTemperatureHysteresis)) {
+            return LEVEL_THROTTLED;
+        }
+        return LEVEL_NORMAL; // Also when the temperature is unknown.
+    }
+
+
+    /**
+     * Applies a new level to the controlled views and notifies {@link #mGovernorListener}
+     * if it's different from the current one.
+     * @param level the new level.
+     */
+    private void setLevel(int level) {
+        if (level == mLevel) {
+            return;
+        }
+        mLevel = level;
+        applyLevel();
+        if (mGovernorListener != null) {
+            mGovernorListener.onGovernorDecision(this, level);
+        }
+    }
+
+
+    /**
+     * Applies the current level to all controlled views.
+     */
+    private void applyLevel() {
+        for (int i = mViews.size() - 1; i >= 0; i--) {
+            KenBurnsView view = mViews.get(i).get();
+            if (view == null) {
+                mViews.remove(i);
+            } else {
+                applyLevel(view);
+            }
+        }
+    }
+
+
+    /**
+     * Applies the current level to a view.
+     * @param view the view to apply the current level to.
+     */
+    private void applyLevel(KenBurnsView view) {
+        switch (mLevel) {
+            case LEVEL_THROTTLED:
+                view.applyGovernorDecision(mThrottledFrameRate, mThrottledDurationScale, false);
+                break;
+            case LEVEL_PAUSED:
+                view.applyGovernorDecision(DEFAULT_FRAME_RATE, 1, true);
+                break;
+            default:
+                view.applyGovernorDecision(DEFAULT_FRAME_RATE, 1, false);
+                break;
+        }
+    }
+
+
+    /**
+     * A governor listener receives a notification every time the governor changes
+     * how the animation runs.
+     */
+    public interface GovernorListener {
+        /**
+         * Notifies a decision of the governor. The device state that led to it can be
+         * queried through {@link AnimationGovernor#getTemperature()},
+         * {@link AnimationGovernor#isCharging()} and {@link AnimationGovernor#isPowerSaveMode()}.
+         * @param governor the governor that made the decision.
+         * @param level one of {@link #LEVEL_NORMAL}, {@link #LEVEL_THROTTLED}
+         *              or {@link #LEVEL_PAUSED}.
+         */
+        public void onGovernorDecision(AnimationGovernor governor, int level);
+    }
+}
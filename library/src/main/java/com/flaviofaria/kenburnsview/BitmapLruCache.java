@@ -0,0 +1,113 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A least recently used cache of bitmaps bounded by their size in bytes. It backs
+ * {@link RetainedBitmapCache} and {@link PosterFrameCache}.
+ */
+class BitmapLruCache {
+
+    /** The maximum size, in bytes, of the cached bitmaps. */
+    private final long mMaxBytes;
+
+    /** The size, in bytes, of the cached bitmaps. */
+    private long mSize;
+
+    /** The cached bitmaps by key, from the least to the most recently used. */
+    private final LinkedHashMap<String, Bitmap> mBitmaps =
+            new LinkedHashMap<String, Bitmap>(16, 0.75f, true);
+
+
+    /**
+     * Creates a bitmap cache.
+     * @param maxBytes the maximum size, in bytes, of the cached bitmaps.
+     */
+    BitmapLruCache(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+
+    /**
+     * Gets a cached bitmap. Bitmaps recycled since they were added are dropped.
+     * @param key the key of the bitmap.
+     * @return the bitmap, or {@code null} if it isn't cached.
+     */
+    synchronized Bitmap get(String key) {
+        Bitmap bitmap = mBitmaps.get(key);
+        if (bitmap != null && bitmap.isRecycled()) {
+            remove(key);
+            return null;
+        }
+        return bitmap;
+    }
+
+
+    /**
+     * Adds a bitmap to the cache, evicting the least recently used ones to stay
+     * within the cache size.
+     * @param key the key of the bitmap.
+     * @param bitmap the bitmap.
+     */
+    synchronized void put(String key, Bitmap bitmap) {
+        Bitmap previous = mBitmaps.put(key, bitmap);
+        if (previous != null) {
+            mSize -= sizeOf(previous);
+        }
+        mSize += sizeOf(bitmap);
+        Iterator<Bitmap> eldest = mBitmaps.values().iterator();
+        while (mSize > mMaxBytes && eldest.hasNext()) {
+            mSize -= sizeOf(eldest.next());
+            eldest.remove();
+        }
+    }
+
+
+    /**
+     * Removes a bitmap from the cache.
+     * @param key the key of the bitmap.
+     */
+    synchronized void remove(String key) {
+        Bitmap bitmap = mBitmaps.remove(key);
+        if (bitmap != null) {
+            mSize -= sizeOf(bitmap);
+        }
+    }
+
+
+    /**
+     * Removes all bitmaps from the cache.
+     */
+    synchronized void evictAll() {
+        mBitmaps.clear();
+        mSize = 0;
+    }
+
+
+    /**
+     * Gets the size of a bitmap.
+     * @param bitmap the bitmap.
+     * @return its size, in bytes.
+     */
+    private static long sizeOf(Bitmap bitmap) {
+        return (long) bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
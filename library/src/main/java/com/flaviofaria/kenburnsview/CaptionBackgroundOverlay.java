@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+/**
+ * {@link OverlayLayer} that draws a rounded background for a caption
+ * laid out on top of the image.
+ */
+public class CaptionBackgroundOverlay extends OverlayLayer {
+
+    /** The paint the background is filled with. */
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+
+    /** The outline of the background, built for the current view size. */
+    private final Path mPath = new Path();
+
+    /** The area of the background, in fractions of the view size. */
+    private final RectF mFractionRect = new RectF();
+
+    /** The area of the background, in pixels, built for the current view size. */
+    private final RectF mRect = new RectF();
+
+    /** The radius, in pixels, of the corners. */
+    private final float mCornerRadius;
+
+
+    /**
+     * Creates a caption background.
+     * @param fractionRect the area of the background, in fractions of the view size,
+     *                     so it scales with the view.
+     * @param color the color of the background.
+     * @param cornerRadius the radius, in pixels, of the corners.
+     */
+    public CaptionBackgroundOverlay(RectF fractionRect, int color, float cornerRadius) {
+        mFractionRect.set(fractionRect);
+        mPaint.setColor(color);
+        mCornerRadius = cornerRadius;
+    }
+
+
+    /**
+     * Moves the background.
+     * @param fractionRect the new area of the background, in fractions of the view size.
+     */
+    public void setFractionRect(RectF fractionRect) {
+        if (!fractionRect.equals(mFractionRect)) {
+            mFractionRect.set(fractionRect);
+            invalidateLayer();
+        }
+    }
+
+
+    /**
+     * Changes the color of the background. This doesn't rebuild the layer.
+     * @param color the new color.
+     */
+    public void setColor(int color) {
+        mPaint.setColor(color);
+    }
+
+
+    @Override
+    protected void onBuild(int width, int height) {
+        mRect.set(mFractionRect.left * width, mFractionRect.top * height,
+                mFractionRect.right * width, mFractionRect.bottom * height);
+        mPath.reset();
+        mPath.addRoundRect(mRect, mCornerRadius, mCornerRadius, Path.Direction.CW);
+    }
+
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        canvas.drawPath(mPath, mPaint);
+    }
+}
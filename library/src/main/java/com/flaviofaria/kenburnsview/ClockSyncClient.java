@@ -0,0 +1,246 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link AnimationClock} kept aligned to a {@link ClockSyncServer}. It probes the server
+ * periodically over UDP and estimates its offset to the server clock from the probe with
+ * the shortest round trip among the most recent ones, as that's the least affected by
+ * network delays. Round trips are timed with the monotonic {@link System#nanoTime()}, so
+ * system clock adjustments don't skew them. Corrections of the offset within a frame are
+ * slewed into the clock gradually, so the picture doesn't judder; larger ones, like the
+ * first estimate, are stepped, since slewing them would keep devices visibly apart for
+ * seconds. Together with a shared {@link TransitionTimeline} seed and start time, this
+ * keeps {@link KenBurnsView}s on several devices showing the same frame.
+ * <p>
+ * Apps using this clock, or a {@link ClockSyncServer}, must hold the
+ * {@code android.permission.INTERNET} permission, which the library doesn't request.
+ * @see KenBurnsView#setTimelineStartTime(long)
+ */
+public class ClockSyncClient implements AnimationClock {
+
+    /** Default interval, in milliseconds, between a pair of probes. */
+    public static final long DEFAULT_PROBE_INTERVAL = 1000;
+
+    /** Amount of most recent probes the offset is estimated from. */
+    private static final int PROBE_WINDOW = 8;
+
+    /** Milliseconds of offset correction slewed in per millisecond of elapsed time. */
+    private static final double SLEW_RATE = 0.05;
+
+    /**
+     * Offset corrections, in milliseconds, above which the offset is stepped: about a
+     * frame at 60 FPS. Smaller ones are slewed in within a third of a second.
+     */
+    private static final long STEP_THRESHOLD = 16;
+
+    /** The address of the server. */
+    private final InetSocketAddress mServerAddress;
+
+    /** Interval, in milliseconds, between a pair of probes. */
+    private final long mProbeInterval;
+
+    /** The socket probes are sent from. */
+    private final DatagramSocket mSocket;
+
+    /** Round trip times, in milliseconds, of the most recent probes. */
+    private final long[] mRoundTrips = new long[PROBE_WINDOW];
+    /** Offsets to the server clock, in milliseconds, measured by the most recent probes. */
+    private final long[] mOffsets = new long[PROBE_WINDOW];
+    /** The total amount of probes answered so far. */
+    private int mProbeCount;
+
+    /** The estimated offset, in milliseconds, of the server clock to the system clock. */
+    private volatile long mOffset;
+
+    /** Whether at least one probe was answered. */
+    private volatile boolean mSynchronized;
+
+    /** The offset, in milliseconds, currently applied to the clock, as it's
+     *  slewed towards {@link #mOffset}. */
+    private double mAppliedOffset;
+
+    /** The {@link System#nanoTime()} at which {@link #mAppliedOffset} was last updated. */
+    private long mLastSlewTime;
+
+    /** The thread that probes the server, while started. */
+    private volatile Thread mThread;
+
+
+    public ClockSyncClient(InetSocketAddress serverAddress) throws SocketException {
+        this(serverAddress, DEFAULT_PROBE_INTERVAL);
+    }
+
+
+    /**
+     * Creates a client.
+     * @param serverAddress the address of the {@link ClockSyncServer}.
+     * @param probeInterval the interval, in milliseconds, between a pair of probes.
+     * @throws SocketException if no local port can be bound.
+     */
+    public ClockSyncClient(InetSocketAddress serverAddress, long probeInterval)
+            throws SocketException {
+        mServerAddress = serverAddress;
+        mProbeInterval = probeInterval;
+        mSocket = new DatagramSocket();
+        mSocket.setSoTimeout((int) probeInterval);
+    }
+
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        long now = System.nanoTime();
+        double correction = mOffset - mAppliedOffset;
+        if (Math.abs(correction) > STEP_THRESHOLD) {
+            mAppliedOffset = mOffset;
+        } else if (correction != 0) {
+            double maxSlew = (now - mLastSlewTime) / 1000000.0 * SLEW_RATE;
+            mAppliedOffset += Math.max(-maxSlew, Math.min(correction, maxSlew));
+        }
+        mLastSlewTime = now;
+        return System.currentTimeMillis() + Math.round(mAppliedOffset);
+    }
+
+
+    /**
+     * Gets the estimated offset of the server clock.
+     * @return the offset, in milliseconds, to be added to the system clock.
+     */
+    public long getOffset() {
+        return mOffset;
+    }
+
+
+    /**
+     * Checks whether the offset was estimated yet. Until then, this clock
+     * reads the system time.
+     * @return {@code true} if at least one probe was answered.
+     */
+    public boolean isSynchronized() {
+        return mSynchronized;
+    }
+
+
+    /**
+     * Starts probing the server on a background thread.
+     */
+    public synchronized void start() {
+        if (mThread != null) {
+            return;
+        }
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Thread current = Thread.currentThread();
+                while (mThread == current && !mSocket.isClosed()) {
+                    long start = System.nanoTime();
+                    probe();
+                    long wait = mProbeInterval - (System.nanoTime() - start) / 1000000;
+                    if (wait > 0) {
+                        try {
+                            Thread.sleep(wait);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }, "ClockSyncClient");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+
+    /**
+     * Stops probing the server. The last estimated offset is kept.
+     */
+    public synchronized void stop() {
+        Thread thread = mThread;
+        mThread = null;
+        mSocket.close();
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+
+    /**
+     * Sends a probe and waits for its reply, updating the offset estimate.
+     * Replies to older probes that arrive late are discarded.
+     */
+    private void probe() {
+        byte[] buffer = new byte[ClockSyncServer.REPLY_SIZE];
+        ByteBuffer data = ByteBuffer.wrap(buffer);
+        try {
+            // Identifies the reply to this probe, and times its round trip.
+            long sendTime = System.nanoTime();
+            data.putInt(ClockSyncServer.PROBE_MAGIC).putLong(sendTime);
+            mSocket.send(new DatagramPacket(buffer, ClockSyncServer.PROBE_SIZE, mServerAddress));
+
+            DatagramPacket reply = new DatagramPacket(buffer, buffer.length);
+            while (true) {
+                reply.setLength(buffer.length);
+                mSocket.receive(reply);
+                long receiveTime = System.nanoTime();
+                long localTime = System.currentTimeMillis();
+                if (reply.getLength() == ClockSyncServer.REPLY_SIZE
+                        && data.getInt(0) == ClockSyncServer.REPLY_MAGIC
+                        && data.getLong(4) == sendTime) {
+                    long serverTime = data.getLong(12);
+                    long roundTrip = (receiveTime - sendTime) / 1000000;
+                    // Assumes the server time was read halfway through the round trip.
+                    addSample(roundTrip, serverTime - (localTime - roundTrip / 2));
+                    return;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            // The probe or its reply was lost. The next one will be sent shortly.
+        } catch (IOException e) {
+            // The socket was closed, or the network is unreachable for now.
+        }
+    }
+
+
+    /**
+     * Adds a probe measure and updates the offset from the one
+     * with the shortest round trip in the window.
+     * @param roundTrip the round trip time of the probe, in milliseconds.
+     * @param offset the offset measured by the probe, in milliseconds.
+     */
+    private void addSample(long roundTrip, long offset) {
+        int slot = mProbeCount % PROBE_WINDOW;
+        mRoundTrips[slot] = roundTrip;
+        mOffsets[slot] = offset;
+        mProbeCount++;
+        int best = 0;
+        int count = Math.min(mProbeCount, PROBE_WINDOW);
+        for (int i = 1; i < count; i++) {
+            if (mRoundTrips[i] < mRoundTrips[best]) {
+                best = i;
+            }
+        }
+        mOffset = mOffsets[best];
+        mSynchronized = true;
+    }
+}
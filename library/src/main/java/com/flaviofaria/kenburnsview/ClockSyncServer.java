@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reference clock of a group of devices playing the same Ken Burns sequence. It answers
+ * the UDP probes of {@link ClockSyncClient}s with its own time, so they can estimate
+ * their offset to it.
+ * <p>
+ * A probe holds {@link #PROBE_MAGIC} and an id the client picks. The reply holds
+ * {@link #REPLY_MAGIC}, the echoed probe id and the time of this clock.
+ * <p>
+ * Apps running a server must hold the {@code android.permission.INTERNET} permission.
+ */
+public class ClockSyncServer {
+
+    /** Default UDP port clock sync runs on. */
+    public static final int DEFAULT_PORT = 47474;
+
+    /** Number that identifies probes sent by clients. */
+    static final int PROBE_MAGIC = 0x4B425351; // "KBSQ"
+    /** Number that identifies replies sent by the server. */
+    static final int REPLY_MAGIC = 0x4B425352; // "KBSR"
+
+    /** Size, in bytes, of a probe. */
+    static final int PROBE_SIZE = 4 + 8;
+    /** Size, in bytes, of a reply. */
+    static final int REPLY_SIZE = 4 + 8 + 8;
+
+    /** The time source shared with the clients. */
+    private final AnimationClock mClock;
+
+    /** The socket probes are received from. */
+    private final DatagramSocket mSocket;
+
+    /** The thread that answers probes, while started. */
+    private Thread mThread;
+
+
+    public ClockSyncServer(int port) throws SocketException {
+        this(port, AnimationClock.SYSTEM);
+    }
+
+
+    /**
+     * Creates a server.
+     * @param port the UDP port to listen on, or {@code 0} for any free port.
+     * @param clock the time source shared with the clients.
+     * @throws SocketException if the port can't be bound.
+     */
+    public ClockSyncServer(int port, AnimationClock clock) throws SocketException {
+        mClock = clock;
+        mSocket = new DatagramSocket(new InetSocketAddress(port));
+    }
+
+
+    /**
+     * Gets the UDP port this server listens on.
+     * @return the port.
+     */
+    public int getPort() {
+        return mSocket.getLocalPort();
+    }
+
+
+    /**
+     * Starts answering probes on a background thread.
+     */
+    public synchronized void start() {
+        if (mThread != null) {
+            return;
+        }
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "ClockSyncServer");
+        mThread.setDaemon(true);
+        mThread.start();
+    }
+
+
+    /**
+     * Stops answering probes and releases the port.
+     */
+    public synchronized void stop() {
+        mThread = null;
+        mSocket.close();
+    }
+
+
+    /**
+     * Answers probes until the socket is closed.
+     */
+    private void serve() {
+        byte[] buffer = new byte[REPLY_SIZE];
+        ByteBuffer data = ByteBuffer.wrap(buffer);
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (!mSocket.isClosed()) {
+            try {
+                packet.setLength(buffer.length);
+                mSocket.receive(packet);
+                if (packet.getLength() != PROBE_SIZE || data.getInt(0) != PROBE_MAGIC) {
+                    continue; // Not a probe.
+                }
+                long probeId = data.getLong(4);
+                data.clear();
+                data.putInt(REPLY_MAGIC).putLong(probeId).putLong(mClock.currentTimeMillis());
+                packet.setLength(REPLY_SIZE);
+                mSocket.send(packet);
+            } catch (IOException e) {
+                // The socket was closed, or this probe is lost. Clients probe again anyway.
+            }
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+
+/**
+ * Offline analysis of the files dumped by {@link FlightRecorder}. It rebuilds the timeline
+ * of frames and transitions and flags late frames, which took too long to come after the
+ * previous one, and jumps, where the image moved abruptly between a pair of frames of the
+ * same transition. Whether a frame is late depends on the frame delay recorded with it,
+ * so frames throttled by an {@link AnimationGovernor} on purpose aren't flagged. Gaps
+ * around pauses, including the animation being hidden, aren't flagged either. It only
+ * depends on the JVM, so it can be run on a workstation:
+ * <pre>
+ * java -cp kenburnsview.jar com.flaviofaria.kenburnsview.FlightRecordReplay record.kbfr
+ * </pre>
+ */
+public class FlightRecordReplay {
+
+    /** Default amount of frame delays after which a frame is considered late. */
+    public static final float DEFAULT_LATE_FRAME_FACTOR = 2;
+
+    /** Default displacement, relative to the rect width, considered a jump. */
+    public static final float DEFAULT_JUMP_THRESHOLD = 0.05f;
+
+    /** Amount of frame delays after which a frame is considered late. */
+    private final float mLateFrameFactor;
+
+    /** Displacement, relative to the rect width, considered a jump. */
+    private final float mJumpThreshold;
+
+    /** Where the timeline and the flagged issues are printed to. */
+    private final PrintStream mOut;
+
+
+    /**
+     * Creates a replay.
+     * @param lateFrameFactor the amount of frame delays, as recorded with each frame,
+     *                        after which a frame is considered late.
+     * @param jumpThreshold the displacement, relative to the rect width, considered a jump.
+     * @param out where the timeline and the flagged issues are printed to.
+     */
+    public FlightRecordReplay(float lateFrameFactor, float jumpThreshold, PrintStream out) {
+        mLateFrameFactor = lateFrameFactor;
+        mJumpThreshold = jumpThreshold;
+        mOut = out;
+    }
+
+
+    /**
+     * Usage: {@code FlightRecordReplay <file> [lateFrameFactor] [jumpThreshold]}.
+     * Exits with status 1 if any issue is flagged.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: FlightRecordReplay <file> "
+                    + "[lateFrameFactor] [jumpThreshold]");
+            System.exit(2);
+        }
+        float lateFrameFactor = args.length > 1
+                ? Float.parseFloat(args[1]) : DEFAULT_LATE_FRAME_FACTOR;
+        float jumpThreshold = args.length > 2
+                ? Float.parseFloat(args[2]) : DEFAULT_JUMP_THRESHOLD;
+        InputStream in = new BufferedInputStream(new FileInputStream(args[0]));
+        int issues;
+        try {
+            issues = new FlightRecordReplay(lateFrameFactor, jumpThreshold, System.out)
+                    .replay(in);
+        } finally {
+            in.close();
+        }
+        System.exit(issues > 0 ? 1 : 0);
+    }
+
+
+    /**
+     * Replays a flight record, printing its timeline and flagged issues.
+     * @param in the stream the record is read from. It's not closed.
+     * @return the amount of flagged issues.
+     * @throws IOException if the stream can't be read or isn't a flight record.
+     */
+    public int replay(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != FlightRecorder.MAGIC) {
+            throw new IOException("Not a flight record");
+        }
+        int version = data.readInt();
+        if (version != FlightRecorder.VERSION) {
+            throw new IOException("Unsupported flight record version " + version);
+        }
+        int count = data.readInt();
+
+        int frames = 0;
+        int transitions = 0;
+        int lateFrames = 0;
+        int jumps = 0;
+        long totalDrawNanos = 0;
+        long maxDrawNanos = 0;
+        boolean hasLastFrame = false;
+        long lastFrameTime = 0;
+        // The interval after which the frame that follows the last one is late.
+        float lateFrameInterval = 0;
+        float lastCenterX = 0;
+        float lastCenterY = 0;
+        float[] rect = new float[4];
+        // The source rect of the last transition record, until its destiny record is read.
+        float[] srcRect = new float[4];
+        boolean hasSrcRect = false;
+
+        for (int i = 0; i < count; i++) {
+            byte type = data.readByte();
+            long time = data.readLong();
+            long duration = data.readLong();
+            int frameDelay = data.readInt();
+            for (int j = 0; j < rect.length; j++) {
+                rect[j] = data.readFloat();
+            }
+            if (type == FlightRecorder.RECORD_TRANSITION) {
+                transitions++;
+                System.arraycopy(rect, 0, srcRect, 0, rect.length);
+                hasSrcRect = true;
+                // The image is expected to move to the source rect of a new transition.
+                hasLastFrame = hasLastFrame && time - lastFrameTime <= lateFrameInterval;
+                lastCenterX = (rect[0] + rect[2]) / 2;
+                lastCenterY = (rect[1] + rect[3]) / 2;
+                continue;
+            } else if (type == FlightRecorder.RECORD_TRANSITION_DESTINY) {
+                // Its source record may have been overwritten in the ring.
+                if (hasSrcRect) {
+                    mOut.printf("%d transition %d ms [%.1f, %.1f, %.1f, %.1f] -> "
+                                    + "[%.1f, %.1f, %.1f, %.1f]%n", time, duration,
+                            srcRect[0], srcRect[1], srcRect[2], srcRect[3],
+                            rect[0], rect[1], rect[2], rect[3]);
+                    hasSrcRect = false;
+                }
+                continue;
+            } else if (type == FlightRecorder.RECORD_PAUSE
+                    || type == FlightRecorder.RECORD_RESUME) {
+                mOut.printf("%d %s%n", time,
+                        type == FlightRecorder.RECORD_PAUSE ? "paused" : "resumed");
+                // Nothing is drawn in between, so the next frame is neither late nor a jump.
+                hasLastFrame = false;
+                continue;
+            } else if (type != FlightRecorder.RECORD_FRAME) {
+                throw new IOException("Unknown record type " + type);
+            }
+
+            frames++;
+            totalDrawNanos += duration;
+            maxDrawNanos = Math.max(maxDrawNanos, duration);
+            float centerX = (rect[0] + rect[2]) / 2;
+            float centerY = (rect[1] + rect[3]) / 2;
+            float width = rect[2] - rect[0];
+            if (hasLastFrame) {
+                long interval = time - lastFrameTime;
+                if (interval > lateFrameInterval) {
+                    lateFrames++;
+                    mOut.printf("%d LATE frame, %d ms after the previous one "
+                            + "(over %.0f ms)%n", time, interval, lateFrameInterval);
+                }
+                float dx = centerX - lastCenterX;
+                float dy = centerY - lastCenterY;
+                float displacement = (float) Math.sqrt(dx * dx + dy * dy);
+                if (width > 0 && displacement / width > mJumpThreshold) {
+                    jumps++;
+                    mOut.printf("%d JUMP of %.1f%% of the rect width%n",
+                            time, 100 * displacement / width);
+                }
+            }
+            hasLastFrame = true;
+            lastFrameTime = time;
+            // Frame delays are rounded down to whole milliseconds, e.g. 16 ms at 60 FPS.
+            lateFrameInterval = mLateFrameFactor * (frameDelay + 1);
+            lastCenterX = centerX;
+            lastCenterY = centerY;
+        }
+
+        mOut.printf("%d frames, %d transitions, %d late frames, %d jumps%n",
+                frames, transitions, lateFrames, jumps);
+        if (frames > 0) {
+            mOut.printf("draw time: %.3f ms average, %.3f ms max%n",
+                    totalDrawNanos / (frames * 1e6), maxDrawNanos / 1e6);
+        }
+        return lateFrames + jumps;
+    }
+}
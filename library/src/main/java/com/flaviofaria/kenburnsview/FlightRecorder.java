@@ -0,0 +1,190 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.RectF;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Always-on recorder of the frames and transitions of a {@link KenBurnsView}. Records
+ * are written into a fixed-size, preallocated binary ring, so the last ones are always
+ * available at no allocation cost. They can be dumped to a compact file on demand and
+ * analyzed offline with {@link FlightRecordReplay}.
+ * <p>
+ * The file starts with the {@link #MAGIC} number, a format version and a record count,
+ * followed by the records from the oldest to the newest, each {@link #RECORD_SIZE}
+ * bytes long: a type, a time, a duration, a frame delay and a rect. A frame record holds
+ * the draw duration, the delay the view was scheduling frames at, which the governor may
+ * have lowered, and the rect shown. A started transition takes a pair of records, one with
+ * its duration and source rect and one with its destiny rect. Pause and resume records
+ * mark where frames stopped being drawn on purpose, and have no duration or rect. Only
+ * frame records hold a frame delay.
+ * Rects are in the coordinates of the drawable being shown.
+ */
+public class FlightRecorder {
+
+    /** Number that identifies flight record files. */
+    public static final int MAGIC = 0x4B424652; // "KBFR"
+    /** Version of the file format. */
+    public static final int VERSION = 3;
+
+    /** Type of the records of drawn frames. */
+    public static final byte RECORD_FRAME = 1;
+    /** Type of the records of started transitions, holding their source rect. */
+    public static final byte RECORD_TRANSITION = 2;
+    /** Type of the records that follow {@link #RECORD_TRANSITION} ones,
+     *  holding their destiny rect. */
+    public static final byte RECORD_TRANSITION_DESTINY = 3;
+    /** Type of the records of the animation pausing or being hidden. */
+    public static final byte RECORD_PAUSE = 4;
+    /** Type of the records of the animation resuming or being shown again. */
+    public static final byte RECORD_RESUME = 5;
+
+    /** Size, in bytes, of every record: type, time, a duration, a frame delay and a rect. */
+    public static final int RECORD_SIZE = 1 + 8 + 8 + 4 + 4 * 4;
+
+    /** The ring the records are written into. */
+    private final ByteBuffer mRing;
+
+    /** The amount of records the ring holds. */
+    private final int mCapacity;
+
+    /** The total amount of records written so far. */
+    private long mRecordCount;
+
+
+    /**
+     * Creates a recorder.
+     * @param capacity the amount of most recent records to keep.
+     */
+    public FlightRecorder(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        mCapacity = capacity;
+        mRing = ByteBuffer.allocate(capacity * RECORD_SIZE);
+    }
+
+
+    /**
+     * Records a drawn frame.
+     * @param time the time of the frame, in milliseconds.
+     * @param drawNanos how long the frame took to draw, in nanoseconds.
+     * @param frameDelay the delay, in milliseconds, the next frame was scheduled after.
+     * @param rect the rect of the image shown in the frame.
+     */
+    public synchronized void recordFrame(long time, long drawNanos, int frameDelay,
+                                         RectF rect) {
+        putRect(nextRecord(RECORD_FRAME, time, drawNanos, frameDelay), rect);
+    }
+
+
+    /**
+     * Records a started transition.
+     * @param time the time the transition started at, in milliseconds.
+     * @param duration the duration of the transition, in milliseconds.
+     * @param srcRect the rect the transition starts from.
+     * @param dstRect the rect the transition ends at.
+     */
+    public synchronized void recordTransition(long time, long duration,
+                                              RectF srcRect, RectF dstRect) {
+        putRect(nextRecord(RECORD_TRANSITION, time, duration, 0), srcRect);
+        putRect(nextRecord(RECORD_TRANSITION_DESTINY, time, duration, 0), dstRect);
+    }
+
+
+    /**
+     * Records the animation pausing, or no longer being shown.
+     * @param time the time of the pause, in milliseconds.
+     */
+    public synchronized void recordPause(long time) {
+        putRect(nextRecord(RECORD_PAUSE, time, 0, 0), null);
+    }
+
+
+    /**
+     * Records the animation resuming, or being shown again.
+     * @param time the time of the resume, in milliseconds.
+     */
+    public synchronized void recordResume(long time) {
+        putRect(nextRecord(RECORD_RESUME, time, 0, 0), null);
+    }
+
+
+    /**
+     * Writes the records currently held, from the oldest to the newest.
+     * @param out the stream to write to. It's not closed.
+     * @throws IOException if the stream can't be written.
+     */
+    public synchronized void dump(OutputStream out) throws IOException {
+        int count = (int) Math.min(mRecordCount, mCapacity);
+        int first = (int) ((mRecordCount - count) % mCapacity);
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(count);
+        byte[] ring = mRing.array();
+        int tail = Math.min(count, mCapacity - first);
+        data.write(ring, first * RECORD_SIZE, tail * RECORD_SIZE);
+        data.write(ring, 0, (count - tail) * RECORD_SIZE);
+        data.flush();
+    }
+
+
+    /**
+     * Forgets all records.
+     */
+    public synchronized void clear() {
+        mRecordCount = 0;
+    }
+
+
+    /**
+     * Positions the ring at the next record and writes its header.
+     * @param type the type of the record.
+     * @param time the time of the record, in milliseconds.
+     * @param duration the draw duration of a frame, or the duration of a transition.
+     * @param frameDelay the frame delay, in milliseconds, of a frame.
+     * @return the ring, ready for the rect of the record to be written.
+     */
+    private ByteBuffer nextRecord(byte type, long time, long duration, int frameDelay) {
+        mRing.position((int) (mRecordCount % mCapacity) * RECORD_SIZE);
+        mRecordCount++;
+        mRing.put(type);
+        mRing.putLong(time);
+        mRing.putLong(duration);
+        mRing.putInt(frameDelay);
+        return mRing;
+    }
+
+
+    /**
+     * Writes a rect into the ring. A {@code null} rect is written as zeros.
+     * @param ring the ring, positioned where the rect goes.
+     * @param rect the rect to be written.
+     */
+    private static void putRect(ByteBuffer ring, RectF rect) {
+        if (rect == null) {
+            ring.putFloat(0).putFloat(0).putFloat(0).putFloat(0);
+        } else {
+            ring.putFloat(rect.left).putFloat(rect.top).putFloat(rect.right).putFloat(rect.bottom);
+        }
+    }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.view.animation.Interpolator;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.WeakHashMap;
+
+/**
+ * {@link TransitionGenerator} that frames the points of interest of an image, like faces
+ * or products. Hints are weighted points or regions in normalized image coordinates,
+ * where {@code (0, 0)} is the top left corner and {@code (1, 1)} is the bottom right one,
+ * so they hold for any resolution of the image.
+ * <p>
+ * Hints belong to an image. Hints given for a specific {@link android.graphics.Bitmap}
+ * or {@link Drawable} are used whenever a {@link KenBurnsView} shows it, so they can be
+ * given before the image is set. Hints given without an image belong to the image
+ * currently shown, and are dropped when the view shows another one, except for
+ * {@link KenBurnsView#setImageUpgrade(Drawable) resolution upgrades}.
+ * <p>
+ * Every generated rect contains a hint picked according to its weight. Rects are placed
+ * directly within the range of positions that contain the hint, and the hints covered by
+ * a candidate rect are counted through a uniform grid, so generation cost stays bounded
+ * even with hundreds of hints. Without hints, it behaves as {@link RandomTransitionGenerator}.
+ */
+public class FocalPointTransitionGenerator extends RandomTransitionGenerator {
+
+    /** Amount of rows and columns of the spatial index. */
+    private static final int GRID_SIZE = 8;
+
+    /** Amount of candidate rects generated for every transition rect. The one that
+     *  covers the most hint weight is picked. */
+    private static final int CANDIDATES = 4;
+
+    /** The hints of the current image. */
+    private final List<FocalHint> mHints = new ArrayList<FocalHint>();
+
+    /** The hints given for specific images, by image. */
+    private final Map<Object, List<FocalHint>> mImageHints =
+            new WeakHashMap<Object, List<FocalHint>>();
+
+    /** The key of the image currently shown in {@link #mImageHints}, if any. */
+    private WeakReference<Object> mCurrentImage;
+
+    /** Cumulative weights of {@link #mHints}, used to pick hints by weight. */
+    private float[] mCumulativeWeights = new float[0];
+
+    /** Indices of the hints whose center lies in each cell of the spatial index. */
+    private final int[][] mCellHints = new int[GRID_SIZE * GRID_SIZE][];
+    /** Sum of the weights of the hints in each cell of the spatial index. */
+    private final float[] mCellWeights = new float[GRID_SIZE * GRID_SIZE];
+
+    /** Indicates whether the hints changed since the spatial index was built. */
+    private boolean mIndexDirty;
+
+
+    public FocalPointTransitionGenerator() {
+        super();
+    }
+
+
+    public FocalPointTransitionGenerator(long transitionDuration,
+                                         Interpolator transitionInterpolator) {
+        super(transitionDuration, transitionInterpolator);
+    }
+
+
+    /**
+     * Adds a point of interest of the current image.
+     * @param x the normalized X coordinate of the point.
+     * @param y the normalized Y coordinate of the point.
+     * @param weight how often the point is framed, relative to the other hints.
+     */
+    public void addFocalPoint(float x, float y, float weight) {
+        addFocalRegion(new RectF(x, y, x, y), weight);
+    }
+
+
+    /**
+     * Adds a point of interest of an image.
+     * @param image the {@link android.graphics.Bitmap} or {@link Drawable} the point
+     *              belongs to.
+     * @param x the normalized X coordinate of the point.
+     * @param y the normalized Y coordinate of the point.
+     * @param weight how often the point is framed, relative to the other hints.
+     */
+    public void addFocalPoint(Object image, float x, float y, float weight) {
+        addFocalRegion(image, new RectF(x, y, x, y), weight);
+    }
+
+
+    /**
+     * Adds a region of interest of the current image. Generated rects contain
+     * the whole region whenever it fits.
+     * @param region the region, in normalized coordinates.
+     * @param weight how often the region is framed, relative to the other hints.
+     */
+    public void addFocalRegion(RectF region, float weight) {
+        mHints.add(createHint(region, weight));
+        mIndexDirty = true;
+    }
+
+
+    /**
+     * Adds a region of interest of an image. Generated rects contain
+     * the whole region whenever it fits.
+     * @param image the {@link android.graphics.Bitmap} or {@link Drawable} the region
+     *              belongs to.
+     * @param region the region, in normalized coordinates.
+     * @param weight how often the region is framed, relative to the other hints.
+     */
+    public void addFocalRegion(Object image, RectF region, float weight) {
+        FocalHint hint = createHint(region, weight);
+        List<FocalHint> hints = mImageHints.get(image);
+        if (hints == null) {
+            hints = new ArrayList<FocalHint>();
+            mImageHints.put(image, hints);
+        }
+        hints.add(hint);
+        if (mCurrentImage != null && mCurrentImage.get() == image) {
+            mHints.add(hint);
+            mIndexDirty = true;
+        }
+    }
+
+
+    /**
+     * Checks and copies a hint.
+     * @param region the region, in normalized coordinates.
+     * @param weight how often the region is framed, relative to the other hints.
+     * @return the hint.
+     */
+    private static FocalHint createHint(RectF region, float weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("Hint weights must be positive");
+        }
+        if (region.left < 0 || region.top < 0 || region.right > 1 || region.bottom > 1
+                || region.left > region.right || region.top > region.bottom) {
+            throw new IllegalArgumentException("Hints must lie within (0, 0) and (1, 1): "
+                    + region);
+        }
+        return new FocalHint(new RectF(region), weight);
+    }
+
+
+    /**
+     * Removes all hints, including the ones given for specific images.
+     */
+    public void clearFocalHints() {
+        mHints.clear();
+        mImageHints.clear();
+        mIndexDirty = true;
+    }
+
+
+    /**
+     * Switches to the hints of the new image. The hints of the previous image are
+     * kept for resolution upgrades, since they're the same image.
+     */
+    @Override
+    protected void onImageChanged(Drawable image, boolean upgrade) {
+        super.onImageChanged(image, upgrade);
+        if (upgrade) {
+            return;
+        }
+        mHints.clear();
+        mIndexDirty = true;
+        mCurrentImage = null;
+        Object key = image;
+        List<FocalHint> hints = image != null ? mImageHints.get(image) : null;
+        if (hints == null && image instanceof BitmapDrawable) {
+            key = ((BitmapDrawable) image).getBitmap();
+            hints = key != null ? mImageHints.get(key) : null;
+        }
+        if (key != null) {
+            mCurrentImage = new WeakReference<Object>(key);
+        }
+        if (hints != null) {
+            mHints.addAll(hints);
+        }
+    }
+
+
+    @Override
+    protected RectF generateRandomRect(RectF drawableBounds, RectF viewportRect) {
+        if (mHints.isEmpty()) {
+            return super.generateRandomRect(drawableBounds, viewportRect);
+        }
+        if (mIndexDirty) {
+            buildIndex();
+        }
+
+        Random random = getRandom();
+        FocalHint hint = mHints.get(pickHint(random.nextFloat()));
+        float dw = drawableBounds.width();
+        float dh = drawableBounds.height();
+        float regionLeft = hint.mRegion.left * dw;
+        float regionTop = hint.mRegion.top * dh;
+        float regionRight = hint.mRegion.right * dw;
+        float regionBottom = hint.mRegion.bottom * dh;
+
+        RectF maxCrop = getMaxCrop(drawableBounds, viewportRect);
+        // The smallest factor that still fits the whole region, if possible.
+        float minFactor = Math.max(MIN_RECT_FACTOR, Math.min(1,
+                Math.max((regionRight - regionLeft) / maxCrop.width(),
+                        (regionBottom - regionTop) / maxCrop.height())));
+
+        RectF best = null;
+        float bestWeight = -1;
+        for (int i = 0; i < CANDIDATES; i++) {
+            float randomFloat = MathUtils.truncate(random.nextFloat(), 2);
+            float factor = minFactor + ((1 - minFactor) * randomFloat);
+            float width = factor * maxCrop.width();
+            float height = factor * maxCrop.height();
+            float left = placeAround(regionLeft, regionRight, width, dw, random);
+            float top = placeAround(regionTop, regionBottom, height, dh, random);
+            RectF candidate = new RectF(left, top, left + width, top + height);
+            float weight = getCoveredWeight(candidate.left / dw, candidate.top / dh,
+                    candidate.right / dw, candidate.bottom / dh);
+            if (weight > bestWeight) {
+                best = candidate;
+                bestWeight = weight;
+            }
+        }
+        return best;
+    }
+
+
+    /**
+     * Picks a random position for a segment of a rect, so that it contains
+     * a segment of a region and stays within the drawable.
+     * @param regionStart the start of the region segment.
+     * @param regionEnd the end of the region segment.
+     * @param size the size of the rect segment.
+     * @param bound the size of the drawable in the same dimension.
+     * @param random the source of randomness.
+     * @return the start of the rect segment.
+     */
+    private static float placeAround(float regionStart, float regionEnd, float size,
+                                     float bound, Random random) {
+        float min = Math.max(0, regionEnd - size);
+        float max = Math.min(regionStart, bound - size);
+        if (min > max) {
+            // The region doesn't fit, so the rect is centered on it as much as possible.
+            float centered = (regionStart + regionEnd - size) / 2;
+            return Math.max(0, Math.min(centered, bound - size));
+        }
+        return min + (max - min) * random.nextFloat();
+    }
+
+
+    /**
+     * Picks a hint according to the hint weights.
+     * @param randomFloat a random number in {@code [0, 1)}.
+     * @return the index of the picked hint.
+     */
+    private int pickHint(float randomFloat) {
+        int count = mHints.size();
+        float target = randomFloat * mCumulativeWeights[count - 1];
+        int low = 0;
+        int high = count - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mCumulativeWeights[mid] > target) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+
+    /**
+     * Sums the weights of the hints whose center lies within a normalized rect.
+     * Cells entirely covered by the rect contribute their total weight at once,
+     * so only the hints of the cells on its border are checked one by one.
+     * @param left the normalized left coordinate of the rect.
+     * @param top the normalized top coordinate of the rect.
+     * @param right the normalized right coordinate of the rect.
+     * @param bottom the normalized bottom coordinate of the rect.
+     * @return the covered weight.
+     */
+    private float getCoveredWeight(float left, float top, float right, float bottom) {
+        int firstColumn = toCell(left);
+        int lastColumn = toCell(right);
+        int firstRow = toCell(top);
+        int lastRow = toCell(bottom);
+        float weight = 0;
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * GRID_SIZE + column;
+                boolean inner = row > firstRow && row < lastRow
+                        && column > firstColumn && column < lastColumn;
+                if (inner) {
+                    weight += mCellWeights[cell];
+                    continue;
+                }
+                int[] hints = mCellHints[cell];
+                for (int i = 0; i < hints.length; i++) {
+                    FocalHint hint = mHints.get(hints[i]);
+                    float x = hint.mRegion.centerX();
+                    float y = hint.mRegion.centerY();
+                    if (x >= left && x <= right && y >= top && y <= bottom) {
+                        weight += hint.mWeight;
+                    }
+                }
+            }
+        }
+        return weight;
+    }
+
+
+    /**
+     * Builds the cumulative weights and the spatial index of the hints.
+     */
+    private void buildIndex() {
+        int count = mHints.size();
+        mCumulativeWeights = new float[count];
+        int[] cellCounts = new int[GRID_SIZE * GRID_SIZE];
+        int[] hintCells = new int[count];
+        float sum = 0;
+        for (int i = 0; i < count; i++) {
+            FocalHint hint = mHints.get(i);
+            sum += hint.mWeight;
+            mCumulativeWeights[i] = sum;
+            int cell = toCell(hint.mRegion.centerY()) * GRID_SIZE
+                    + toCell(hint.mRegion.centerX());
+            hintCells[i] = cell;
+            cellCounts[cell]++;
+        }
+        for (int cell = 0; cell < mCellHints.length; cell++) {
+            mCellHints[cell] = new int[cellCounts[cell]];
+            mCellWeights[cell] = 0;
+        }
+        int[] filled = new int[GRID_SIZE * GRID_SIZE];
+        for (int i = 0; i < count; i++) {
+            int cell = hintCells[i];
+            mCellHints[cell][filled[cell]++] = i;
+            mCellWeights[cell] += mHints.get(i).mWeight;
+        }
+        mIndexDirty = false;
+    }
+
+
+    /**
+     * Gets the row or column of the spatial index a normalized coordinate falls in.
+     * @param coordinate the normalized coordinate.
+     * @return the row or column index.
+     */
+    private static int toCell(float coordinate) {
+        int cell = (int) (coordinate * GRID_SIZE);
+        return Math.max(0, Math.min(cell, GRID_SIZE - 1));
+    }
+
+
+    /**
+     * A weighted region of interest, in normalized coordinates.
+     */
+    private static final class FocalHint {
+
+        /** The region. A point has an empty region. */
+        private final RectF mRegion;
+
+        /** How often the region is framed, relative to the other hints. */
+        private final float mWeight;
+
+
+        private FocalHint(RectF region, float weight) {
+            mRegion = region;
+            mWeight = weight;
+        }
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pre-rendered frames of a looping Ken Burns sequence, for devices that can't draw a large
+ * bitmap through a matrix in every frame. The frames of a fixed set of transitions are
+ * rendered in the background, at a reduced resolution, into a ring of viewport-sized
+ * bitmaps, so playing them back is a simple blit per frame.
+ * <p>
+ * The frames take {@code width * height * bytesPerPixel * frameRate * loopSeconds} bytes,
+ * where the width and height are the viewport ones times the resolution scale. That suits
+ * small views and short loops: a 360x240 card playing a 9 s loop at the default settings
+ * (half resolution, 24 fps, {@link Bitmap.Config#RGB_565}) takes about 9 MB, within the
+ * default cap. A full-screen loop would need a much lower resolution or frame rate.
+ * Building fails, and {@link KenBurnsView} keeps rendering live, when the frames don't fit
+ * in the memory cap or can't be allocated.
+ * @see KenBurnsView#setFrameCache(FrameCache)
+ */
+public class FrameCache {
+
+    /** Default frame rate, in frames per second, of the rendered frames. */
+    public static final int DEFAULT_FRAME_RATE = 24;
+    /** Default fraction of the viewport size the frames are rendered at. */
+    public static final float DEFAULT_RESOLUTION_SCALE = 0.5f;
+    /** Default maximum amount of memory, in bytes, taken by the frames. */
+    public static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+    /** The image the frames are rendered from. */
+    private final Bitmap mSource;
+
+    /** The transitions of the loop, in bitmap coordinates. */
+    private final List<Transition> mTransitions;
+
+    /** The size of the viewport the frames are rendered for. */
+    private final int mViewportWidth;
+    private final int mViewportHeight;
+
+    /** The frame rate, in frames per second, of the rendered frames. */
+    private int mFrameRate = DEFAULT_FRAME_RATE;
+    /** The fraction of the viewport size the frames are rendered at. */
+    private float mResolutionScale = DEFAULT_RESOLUTION_SCALE;
+    /** The maximum amount of memory, in bytes, taken by the frames. */
+    private long mMaxBytes = DEFAULT_MAX_BYTES;
+    /** The configuration of the frame bitmaps. */
+    private Bitmap.Config mBitmapConfig = Bitmap.Config.RGB_565;
+
+    /** The start time, in milliseconds, of each transition within the loop. */
+    private final long[] mStartTimes;
+    /** The duration, in milliseconds, of the loop. */
+    private final long mLoopDuration;
+
+    /** The rendered frames, once built. */
+    private volatile Bitmap[] mFrames;
+
+    /** Indicates whether building was started. */
+    private boolean mBuilding;
+
+
+    /**
+     * Creates a cache for a loop of transitions.
+     * @param source the image the frames are rendered from.
+     * @param transitions the transitions of the loop, in bitmap coordinates.
+     * @param viewportWidth the width of the viewport the frames are rendered for.
+     * @param viewportHeight the height of the viewport the frames are rendered for.
+     */
+    public FrameCache(Bitmap source, List<Transition> transitions,
+                      int viewportWidth, int viewportHeight) {
+        if (transitions.isEmpty()) {
+            throw new IllegalArgumentException("A loop needs at least one transition");
+        }
+        mSource = source;
+        mTransitions = new ArrayList<Transition>(transitions);
+        mViewportWidth = viewportWidth;
+        mViewportHeight = viewportHeight;
+        mStartTimes = new long[transitions.size()];
+        long loopDuration = 0;
+        for (int i = 0; i < mTransitions.size(); i++) {
+            mStartTimes[i] = loopDuration;
+            loopDuration += mTransitions.get(i).getDuration();
+        }
+        if (loopDuration <= 0) {
+            throw new IllegalArgumentException("A loop must have a positive duration");
+        }
+        mLoopDuration = loopDuration;
+    }
+
+
+    /**
+     * Creates a cache for a seamless loop of transitions produced by a generator.
+     * A closing transition goes from the last rect back to the first one.
+     * @param source the image the frames are rendered from.
+     * @param transGen the generator of the transitions.
+     * @param count the amount of transitions to generate, besides the closing one.
+     * @param viewportWidth the width of the viewport the frames are rendered for.
+     * @param viewportHeight the height of the viewport the frames are rendered for.
+     * @return the cache, not built yet.
+     */
+    public static FrameCache fromGenerator(Bitmap source, TransitionGenerator transGen,
+                                           int count, int viewportWidth, int viewportHeight) {
+        RectF bitmapRect = new RectF(0, 0, source.getWidth(), source.getHeight());
+        RectF viewportRect = new RectF(0, 0, viewportWidth, viewportHeight);
+        List<Transition> transitions = new ArrayList<Transition>();
+        for (int i = 0; i < count; i++) {
+            transitions.add(transGen.generateNextTransition(bitmapRect, viewportRect));
+        }
+        Transition first = transitions.get(0);
+        Transition last = transitions.get(transitions.size() - 1);
+        transitions.add(new Transition(last.getDestinyRect(), first.getSourceRect(),
+                last.getDuration(), last.getInterpolator()));
+        return new FrameCache(source, transitions, viewportWidth, viewportHeight);
+    }
+
+
+    /**
+     * Sets the frame rate of the rendered frames. Must be called before building.
+     * @param frameRate the frame rate, in frames per second.
+     * @throws IllegalArgumentException if {@code frameRate} isn't positive.
+     */
+    public void setFrameRate(int frameRate) {
+        if (frameRate <= 0) {
+            throw new IllegalArgumentException("The frame rate must be positive: " + frameRate);
+        }
+        mFrameRate = frameRate;
+    }
+
+
+    /**
+     * Sets the resolution of the rendered frames. Must be called before building.
+     * @param resolutionScale the fraction of the viewport size the frames are rendered at.
+     */
+    public void setResolutionScale(float resolutionScale) {
+        mResolutionScale = resolutionScale;
+    }
+
+
+    /**
+     * Sets the memory cap of the rendered frames. Must be called before building.
+     * @param maxBytes the maximum amount of memory, in bytes, taken by the frames.
+     */
+    public void setMaxBytes(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+
+    /**
+     * Sets the configuration of the frame bitmaps. The default one is
+     * {@link Bitmap.Config#RGB_565}. Must be called before building.
+     * @param bitmapConfig the bitmap configuration.
+     */
+    public void setBitmapConfig(Bitmap.Config bitmapConfig) {
+        mBitmapConfig = bitmapConfig;
+    }
+
+
+    /**
+     * Renders the frames on a background thread.
+     * @param listener notified on the UI thread when building finishes. May be {@code null}.
+     */
+    public synchronized void build(final BuildListener listener) {
+        if (mBuilding) {
+            return;
+        }
+        mBuilding = true;
+        final Handler handler = new Handler(Looper.getMainLooper());
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final boolean built = render();
+                if (listener != null) {
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (built) {
+                                listener.onFrameCacheBuilt(FrameCache.this);
+                            } else {
+                                listener.onFrameCacheFailed(FrameCache.this);
+                            }
+                        }
+                    });
+                }
+            }
+        }, "FrameCache").start();
+    }
+
+
+    /**
+     * Renders all frames, unless they don't fit in the memory cap or can't be allocated.
+     * @return {@code true} if the frames were rendered.
+     */
+    private boolean render() {
+        if (getRequiredBytes() > mMaxBytes) {
+            return false;
+        }
+        int width = getFrameWidth();
+        int height = getFrameHeight();
+        int frameCount = getFrameCount();
+
+        RectF bitmapRect = new RectF(0, 0, mSource.getWidth(), mSource.getHeight());
+        RectF viewportRect = new RectF(0, 0, mViewportWidth, mViewportHeight);
+        Matrix matrix = new Matrix();
+        Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+        Canvas canvas = new Canvas();
+        Bitmap[] frames = new Bitmap[frameCount];
+        try {
+            for (int i = 0; i < frameCount; i++) {
+                long time = i * 1000L / mFrameRate;
+                int index = getTransitionIndex(time);
+                Transition transition = mTransitions.get(index);
+                RectF rect = transition.getInterpolatedRect(time - mStartTimes[index]);
+                MathUtils.setTransitionMatrix(matrix, bitmapRect, viewportRect, rect);
+                matrix.postScale(mResolutionScale, mResolutionScale);
+
+                frames[i] = Bitmap.createBitmap(width, height, mBitmapConfig);
+                canvas.setBitmap(frames[i]);
+                canvas.drawBitmap(mSource, matrix, paint);
+            }
+        } catch (OutOfMemoryError e) {
+            for (Bitmap frame : frames) {
+                if (frame != null) {
+                    frame.recycle();
+                }
+            }
+            return false;
+        }
+        mFrames = frames;
+        return true;
+    }
+
+
+    /**
+     * Computes the memory the frames take with the current settings. Building fails
+     * if it exceeds the memory cap.
+     * @return the size of all frames, in bytes.
+     */
+    public long getRequiredBytes() {
+        int bytesPerPixel = mBitmapConfig == Bitmap.Config.ARGB_8888 ? 4
+                : mBitmapConfig == Bitmap.Config.ALPHA_8 ? 1 : 2;
+        return (long) getFrameWidth() * getFrameHeight() * bytesPerPixel * getFrameCount();
+    }
+
+
+    private int getFrameWidth() {
+        return Math.max(1, Math.round(mViewportWidth * mResolutionScale));
+    }
+
+
+    private int getFrameHeight() {
+        return Math.max(1, Math.round(mViewportHeight * mResolutionScale));
+    }
+
+
+    private int getFrameCount() {
+        return (int) Math.max(1, mLoopDuration * mFrameRate / 1000);
+    }
+
+
+    /**
+     * Checks whether the frames are built for a given image and viewport.
+     * @param source the image being shown.
+     * @param viewportWidth the width of the viewport.
+     * @param viewportHeight the height of the viewport.
+     * @return {@code true} if the frames can be played back for the image in the viewport.
+     */
+    public boolean isReady(Bitmap source, int viewportWidth, int viewportHeight) {
+        return mFrames != null && source == mSource
+                && viewportWidth == mViewportWidth && viewportHeight == mViewportHeight;
+    }
+
+
+    /**
+     * Gets the image the frames are rendered from.
+     * @return the source bitmap.
+     */
+    public Bitmap getSource() {
+        return mSource;
+    }
+
+
+    /**
+     * Gets the duration of the loop.
+     * @return the sum of the transition durations, in milliseconds.
+     */
+    public long getLoopDuration() {
+        return mLoopDuration;
+    }
+
+
+    /**
+     * Gets the index of the transition that plays at a given time of the loop.
+     * @param time the time, in milliseconds. It wraps around the loop duration.
+     * @return the index of the transition.
+     */
+    public int getTransitionIndex(long time) {
+        time %= mLoopDuration;
+        int index = mStartTimes.length - 1;
+        while (index > 0 && mStartTimes[index] > time) {
+            index--;
+        }
+        return index;
+    }
+
+
+    /**
+     * Gets the time a transition starts at within the loop.
+     * @param index the index of the transition.
+     * @return the start time, in milliseconds.
+     */
+    public long getStartTime(int index) {
+        return mStartTimes[index];
+    }
+
+
+    /**
+     * Gets a transition of the loop.
+     * @param index the index of the transition.
+     * @return the transition.
+     */
+    public Transition getTransition(int index) {
+        return mTransitions.get(index);
+    }
+
+
+    /**
+     * Gets the frame to be shown at a given time of the loop. Must only be called
+     * once the frames are built.
+     * @param time the time, in milliseconds. It wraps around the loop duration.
+     * @return the frame.
+     */
+    public Bitmap getFrame(long time) {
+        Bitmap[] frames = mFrames;
+        int index = (int) ((time % mLoopDuration) * mFrameRate / 1000);
+        return frames[Math.min(index, frames.length - 1)];
+    }
+
+
+    /**
+     * Releases the rendered frames. The cache can't be played back afterwards.
+     */
+    public void recycle() {
+        Bitmap[] frames = mFrames;
+        mFrames = null;
+        if (frames != null) {
+            for (Bitmap frame : frames) {
+                frame.recycle();
+            }
+        }
+    }
+
+
+    /**
+     * A build listener is notified on the UI thread when the frames of a cache are built.
+     */
+    public interface BuildListener {
+        /**
+         * Notifies that all frames were rendered.
+         * @param cache the cache that was built.
+         */
+        public void onFrameCacheBuilt(FrameCache cache);
+
+        /**
+         * Notifies that the frames don't fit in the memory cap or couldn't be allocated.
+         * @param cache the cache that failed to build.
+         */
+        public void onFrameCacheFailed(FrameCache cache);
+    }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.os.SystemClock;
+
+import com.flaviofaria.kenburnsview.KenBurnsView.TransitionListener;
+
+/**
+ * {@link Drawable} that wraps another one and animates it with the
+ * <a href="http://en.wikipedia.org/wiki/Ken_Burns_effect">Ken Burns Effect</a>
+ * within its bounds. Unlike {@link KenBurnsView}, it doesn't need a view of its own, so
+ * it can be used as a background, in any {@link android.widget.ImageView} or in a list
+ * row. Frames are scheduled through its {@link Drawable.Callback}, so from API 11 on the
+ * animation pauses by itself when the callback goes away, e.g. when the host view is
+ * recycled.
+ * @see Transition
+ * @see TransitionGenerator
+ */
+public class KenBurnsDrawable extends Drawable implements Drawable.Callback, Animatable {
+
+    /** Delay between a pair of frames at a 60 FPS frame rate. */
+    private static final long FRAME_DELAY = 1000 / 60;
+
+    /** The drawable being animated. */
+    private final Drawable mSource;
+
+    /** Matrix used to perform all the necessary transition transformations. */
+    private final Matrix mMatrix = new Matrix();
+
+    /** The {@link TransitionGenerator} implementation used to perform the transitions between
+     *  rects. The default {@link TransitionGenerator} is {@link RandomTransitionGenerator}. */
+    private TransitionGenerator mTransGen = new RandomTransitionGenerator();
+
+    /** A {@link TransitionListener} to be notified when a transition starts or ends. */
+    private TransitionListener mTransitionListener;
+
+    /** The time source of the animation. */
+    private AnimationClock mClock = AnimationClock.SYSTEM;
+
+    /** The ongoing transition. */
+    private Transition mCurrentTrans;
+
+    /** The bounds of this drawable, relative to its own top left corner. */
+    private final RectF mViewportRect = new RectF();
+    /** The bounds of {@link #mSource}. */
+    private final RectF mDrawableRect = new RectF();
+
+    /** The progress of the animation, in milliseconds. */
+    private long mElapsedTime;
+
+    /** The time, in milliseconds, of the last animation frame. */
+    private long mLastFrameTime;
+
+    /** Controls whether the animation is running, through {@link #start()} and {@link #stop()}. */
+    private boolean mRunning = true;
+
+    /** Indicates whether the next frame is scheduled. Otherwise, no time
+     *  has elapsed since the last frame as far as the animation is concerned. */
+    private boolean mTicking;
+
+    /** Schedules the next frame, unless there's no one to draw it anymore. */
+    private final Runnable mTicker = new Runnable() {
+        @Override
+        public void run() {
+            if (!hasCallback()) {
+                mTicking = false; // Nobody is drawing this drawable anymore.
+                return;
+            }
+            invalidateSelf();
+        }
+    };
+
+
+    /**
+     * Creates a Ken Burns drawable.
+     * @param source the drawable to be animated. It must have an intrinsic size.
+     */
+    public KenBurnsDrawable(Drawable source) {
+        mSource = source;
+        int width = source.getIntrinsicWidth();
+        int height = source.getIntrinsicHeight();
+        if (width > 0 && height > 0) {
+            source.setBounds(0, 0, width, height);
+            mDrawableRect.set(0, 0, width, height);
+        }
+        source.setCallback(this);
+    }
+
+
+    /**
+     * Sets the {@link TransitionGenerator} to be used in animations.
+     * @param transgen the {@link TransitionGenerator} to be used in animations.
+     */
+    public void setTransitionGenerator(TransitionGenerator transgen) {
+        mTransGen = transgen;
+        startNewTransition();
+    }
+
+
+    public void setTransitionListener(TransitionListener transitionListener) {
+        mTransitionListener = transitionListener;
+    }
+
+
+    /**
+     * Sets the time source of the animation.
+     * @param clock the time source, or {@code null} to use {@link AnimationClock#SYSTEM}.
+     */
+    public void setAnimationClock(AnimationClock clock) {
+        mClock = clock != null ? clock : AnimationClock.SYSTEM;
+        mLastFrameTime = mClock.currentTimeMillis();
+    }
+
+
+    @Override
+    protected void onBoundsChange(Rect bounds) {
+        super.onBoundsChange(bounds);
+        mViewportRect.set(0, 0, bounds.width(), bounds.height());
+        startNewTransition();
+    }
+
+
+    /**
+     * Generates and starts a transition.
+     */
+    private void startNewTransition() {
+        if (mViewportRect.isEmpty() || mDrawableRect.isEmpty()) {
+            return; // Can't start transition without bounds.
+        }
+        mCurrentTrans = mTransGen.generateNextTransition(mDrawableRect, mViewportRect);
+        mElapsedTime = 0;
+        if (mTransitionListener != null) {
+            mTransitionListener.onTransitionStart(mCurrentTrans);
+        }
+    }
+
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (mCurrentTrans == null) {
+            startNewTransition();
+            if (mCurrentTrans == null) {
+                return;
+            }
+        }
+        long now = mClock.currentTimeMillis();
+        boolean animating = mRunning && isVisible() && hasCallback();
+        if (animating && mTicking) {
+            mElapsedTime += now - mLastFrameTime;
+        }
+        mLastFrameTime = now;
+
+        RectF currentRect = mCurrentTrans.getInterpolatedRect(mElapsedTime);
+        MathUtils.setTransitionMatrix(mMatrix, mDrawableRect, mViewportRect, currentRect);
+        Rect bounds = getBounds();
+        int saveCount = canvas.save();
+        canvas.clipRect(bounds);
+        canvas.translate(bounds.left, bounds.top);
+        canvas.concat(mMatrix);
+        mSource.draw(canvas);
+        canvas.restoreToCount(saveCount);
+
+        if (mElapsedTime >= mCurrentTrans.getDuration()) {
+            // Current transition is over. It's time to start a new one.
+            if (mTransitionListener != null) {
+                mTransitionListener.onTransitionEnd(mCurrentTrans);
+            }
+            startNewTransition();
+        }
+
+        mTicking = animating;
+        if (animating) {
+            // Draws triggered by others mustn't pile up extra frames.
+            unscheduleSelf(mTicker);
+            scheduleSelf(mTicker, SystemClock.uptimeMillis() + FRAME_DELAY);
+        }
+    }
+
+
+    /**
+     * Checks whether something still draws this drawable. The callback can only be
+     * read from API 11 on, so before that it's assumed to be there, and the animation
+     * only pauses when this drawable is hidden or stopped.
+     * @return {@code true} if this drawable has a callback or it can't be told,
+     * {@code false} otherwise.
+     */
+    private boolean hasCallback() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB || getCallback() != null;
+    }
+
+
+    @Override
+    public boolean setVisible(boolean visible, boolean restart) {
+        boolean changed = super.setVisible(visible, restart);
+        mSource.setVisible(visible, restart);
+        if (!visible) {
+            stopTicking();
+        } else if (changed) {
+            invalidateSelf();
+        }
+        return changed;
+    }
+
+
+    /**
+     * Resumes the Ken Burns Effect animation.
+     */
+    @Override
+    public void start() {
+        if (!mRunning) {
+            mRunning = true;
+            invalidateSelf();
+        }
+    }
+
+
+    /**
+     * Pauses the Ken Burns Effect animation.
+     */
+    @Override
+    public void stop() {
+        mRunning = false;
+        stopTicking();
+    }
+
+
+    @Override
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+
+    /**
+     * Cancels the next scheduled frame.
+     */
+    private void stopTicking() {
+        mTicking = false;
+        unscheduleSelf(mTicker);
+    }
+
+
+    @Override
+    public void setAlpha(int alpha) {
+        mSource.setAlpha(alpha);
+    }
+
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        mSource.setColorFilter(colorFilter);
+    }
+
+
+    @Override
+    public int getOpacity() {
+        // The source always covers the entire bounds.
+        return mSource.getOpacity();
+    }
+
+
+    /**
+     * This drawable fills whatever bounds it's given, so it has no intrinsic size.
+     */
+    @Override
+    public int getIntrinsicWidth() {
+        return -1;
+    }
+
+
+    /**
+     * This drawable fills whatever bounds it's given, so it has no intrinsic size.
+     */
+    @Override
+    public int getIntrinsicHeight() {
+        return -1;
+    }
+
+
+    @Override
+    public void invalidateDrawable(Drawable who) {
+        invalidateSelf();
+    }
+
+
+    @Override
+    public void scheduleDrawable(Drawable who, Runnable what, long when) {
+        scheduleSelf(what, when);
+    }
+
+
+    @Override
+    public void unscheduleDrawable(Drawable who, Runnable what) {
+        unscheduleSelf(what);
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.flaviofaria.kenburnsview.KenBurnsView.TransitionListener;
+
+/**
+ * {@link View} that lays out a grid of cells and animates the image of each one of them
+ * with the <a href="http://en.wikipedia.org/wiki/Ken_Burns_effect">Ken Burns Effect</a>.
+ * All cells are drawn in a single pass, driven by a single frame loop, which is much
+ * cheaper than having a {@link KenBurnsView} per cell.
+ * @see KenBurnsView
+ */
+public class KenBurnsGridView extends View {
+
+    /** Delay between a pair of frames at a 60 FPS frame rate. */
+    private static final long FRAME_DELAY = 1000 / 60;
+
+    /** The cells of the grid, in row-major order. */
+    private Cell[] mCells = new Cell[0];
+
+    /** The number of rows of the grid. */
+    private int mRows;
+    /** The number of columns of the grid. */
+    private int mColumns;
+
+    /** The spacing, in pixels, between a pair of adjacent cells. */
+    private float mCellSpacing;
+
+    /** The delay, in milliseconds, between the first transitions of a pair of
+     *  consecutive cells. */
+    private long mStaggerDelay;
+
+    /** The time, in milliseconds, of the last animation frame. */
+    private long mLastFrameTime;
+
+    /** The time source of the animation. */
+    private AnimationClock mClock = AnimationClock.SYSTEM;
+
+    /** Controls whether the the animation is running. */
+    private boolean mPaused;
+
+    /** Indicates whether the last frame had any cell to animate and scheduled
+     *  the next one. Otherwise, no time has elapsed since it was drawn. */
+    private boolean mAnimating;
+
+
+    public KenBurnsGridView(Context context) {
+        this(context, null);
+    }
+
+
+    public KenBurnsGridView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+
+    public KenBurnsGridView(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+        setGridSize(1, 1);
+    }
+
+
+    @Override
+    public void setVisibility(int visibility) {
+        super.setVisibility(visibility);
+        /* When not visible, onDraw() doesn't get called,
+           but the time elapses anyway. */
+        switch (visibility) {
+            case VISIBLE:
+                resume();
+                break;
+            default:
+                pause();
+                break;
+        }
+    }
+
+
+    /**
+     * Sets the number of rows and columns of the grid. Cells that are
+     * still in the grid keep their images, generators and listeners.
+     * @param rows the number of rows.
+     * @param columns the number of columns.
+     */
+    public void setGridSize(int rows, int columns) {
+        if (rows <= 0 || columns <= 0) {
+            throw new IllegalArgumentException("The grid must have at least one cell");
+        }
+        Cell[] cells = new Cell[rows * columns];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = i < mCells.length ? mCells[i] : new Cell();
+        }
+        for (int i = cells.length; i < mCells.length; i++) {
+            mCells[i].setDrawable(null, this);
+        }
+        mCells = cells;
+        mRows = rows;
+        mColumns = columns;
+        layoutCells();
+    }
+
+
+    /**
+     * Gets the number of cells of the grid.
+     * @return the number of rows times the number of columns.
+     */
+    public int getCellCount() {
+        return mCells.length;
+    }
+
+
+    /**
+     * Sets the spacing between adjacent cells.
+     * @param spacing the spacing, in pixels.
+     */
+    public void setCellSpacing(float spacing) {
+        mCellSpacing = spacing;
+        layoutCells();
+    }
+
+
+    /**
+     * Delays the first transition of every cell by {@code delay} milliseconds more than
+     * the one of the previous cell, so cells don't roll transitions over all at once.
+     * This only affects transitions started after this call.
+     * @param delay the delay, in milliseconds.
+     */
+    public void setStaggerDelay(long delay) {
+        mStaggerDelay = delay;
+    }
+
+
+    /**
+     * Sets the image of a cell. Its first transition is staggered as set by
+     * {@link #setStaggerDelay(long)}.
+     * @param cell the index of the cell, in row-major order.
+     * @param drawable the image to be animated in the cell.
+     */
+    public void setCellDrawable(int cell, Drawable drawable) {
+        mCells[cell].setDrawable(drawable, this);
+        startNewTransition(cell, cell * mStaggerDelay);
+        invalidate();
+    }
+
+
+    /**
+     * Sets the {@link TransitionGenerator} of a cell.
+     * The default {@link TransitionGenerator} is {@link RandomTransitionGenerator}.
+     * @param cell the index of the cell, in row-major order.
+     * @param transGen the {@link TransitionGenerator} to be used in the cell.
+     */
+    public void setCellTransitionGenerator(int cell, TransitionGenerator transGen) {
+        mCells[cell].mTransGen = transGen;
+        startNewTransition(cell, 0);
+    }
+
+
+    /**
+     * Sets a {@link TransitionListener} to be notified when a transition
+     * starts or ends in a cell.
+     * @param cell the index of the cell, in row-major order.
+     * @param transitionListener the listener.
+     */
+    public void setCellTransitionListener(int cell, TransitionListener transitionListener) {
+        mCells[cell].mTransitionListener = transitionListener;
+    }
+
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        layoutCells();
+    }
+
+
+    /**
+     * Computes the bounds of every cell and starts over their animations.
+     */
+    private void layoutCells() {
+        float left = getPaddingLeft();
+        float top = getPaddingTop();
+        float width = getWidth() - left - getPaddingRight();
+        float height = getHeight() - top - getPaddingBottom();
+        float cellWidth = (width - (mColumns - 1) * mCellSpacing) / mColumns;
+        float cellHeight = (height - (mRows - 1) * mCellSpacing) / mRows;
+        for (int i = 0; i < mCells.length; i++) {
+            float cellLeft = left + (i % mColumns) * (cellWidth + mCellSpacing);
+            float cellTop = top + (i / mColumns) * (cellHeight + mCellSpacing);
+            Cell cell = mCells[i];
+            cell.mBounds.set(cellLeft, cellTop, cellLeft + cellWidth, cellTop + cellHeight);
+            cell.mViewportRect.set(0, 0, Math.max(cellWidth, 0), Math.max(cellHeight, 0));
+            startNewTransition(i, i * mStaggerDelay);
+        }
+        invalidate();
+    }
+
+
+    /**
+     * Generates and starts a transition in a cell.
+     * @param index the index of the cell, in row-major order.
+     * @param delay the time, in milliseconds, to wait before the transition starts.
+     */
+    private void startNewTransition(int index, long delay) {
+        Cell cell = mCells[index];
+        if (cell.mViewportRect.isEmpty() || cell.mDrawableRect.isEmpty()) {
+            cell.mTrans = null;
+            return; // Can't start transition without bounds.
+        }
+        cell.mTrans = cell.mTransGen.generateNextTransition(cell.mDrawableRect,
+                cell.mViewportRect);
+        cell.mElapsedTime = -delay;
+        if (delay == 0) {
+            fireTransitionStart(cell);
+        }
+    }
+
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        long frameTime = mAnimating
+                ? Math.max(mClock.currentTimeMillis() - mLastFrameTime, 0) : 0;
+        boolean animating = false;
+        for (int i = 0; i < mCells.length; i++) {
+            Cell cell = mCells[i];
+            Transition trans = cell.mTrans;
+            if (trans == null) {
+                continue;
+            }
+            if (trans.getDestinyRect() == null) { // Stopping? A stop event has to be fired.
+                fireTransitionEnd(cell);
+                cell.mTrans = null;
+                continue;
+            }
+            if (!mPaused) {
+                long elapsedTime = cell.mElapsedTime + frameTime;
+                if (cell.mElapsedTime < 0 && elapsedTime >= 0) {
+                    fireTransitionStart(cell); // The staggered transition is just starting.
+                }
+                cell.mElapsedTime = elapsedTime;
+                animating = true;
+            }
+            RectF currentRect = trans.getInterpolatedRect(Math.max(cell.mElapsedTime, 0));
+            MathUtils.setTransitionMatrix(cell.mMatrix, cell.mDrawableRect,
+                    cell.mViewportRect, currentRect);
+
+            int saveCount = canvas.save();
+            canvas.clipRect(cell.mBounds);
+            canvas.translate(cell.mBounds.left, cell.mBounds.top);
+            canvas.concat(cell.mMatrix);
+            cell.mDrawable.draw(canvas);
+            canvas.restoreToCount(saveCount);
+
+            if (cell.mElapsedTime >= trans.getDuration()) {
+                // Current transition is over. It's time to start a new one.
+                fireTransitionEnd(cell);
+                startNewTransition(i, 0);
+            }
+        }
+        mLastFrameTime = mClock.currentTimeMillis();
+        mAnimating = animating;
+        if (animating) {
+            postInvalidateDelayed(FRAME_DELAY);
+        }
+    }
+
+
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        for (Cell cell : mCells) {
+            if (cell.mDrawable == who) {
+                return true;
+            }
+        }
+        return super.verifyDrawable(who);
+    }
+
+
+    /**
+     * Fires a start event on the {@link TransitionListener} of a cell.
+     * @param cell the cell whose transition just started.
+     */
+    private void fireTransitionStart(Cell cell) {
+        if (cell.mTransitionListener != null && cell.mTrans != null) {
+            cell.mTransitionListener.onTransitionStart(cell.mTrans);
+        }
+    }
+
+
+    /**
+     * Fires an end event on the {@link TransitionListener} of a cell.
+     * @param cell the cell whose transition just ended.
+     */
+    private void fireTransitionEnd(Cell cell) {
+        if (cell.mTransitionListener != null && cell.mTrans != null) {
+            cell.mTransitionListener.onTransitionEnd(cell.mTrans);
+        }
+    }
+
+
+    /**
+     * Sets the time source of the animation. This is useful to drive the animation
+     * with a simulated clock, e.g. in benchmarks, or with a clock shared by several devices.
+     * @param clock the time source, or {@code null} to use {@link AnimationClock#SYSTEM}.
+     */
+    public void setAnimationClock(AnimationClock clock) {
+        mClock = clock != null ? clock : AnimationClock.SYSTEM;
+        mLastFrameTime = mClock.currentTimeMillis();
+    }
+
+
+    /**
+     * Pauses the Ken Burns Effect animation of all cells.
+     */
+    public void pause() {
+        mPaused = true;
+    }
+
+
+    /**
+     * Resumes the Ken Burns Effect animation of all cells.
+     */
+    public void resume() {
+        mPaused = false;
+        invalidate();
+    }
+
+
+    /**
+     * The animation state of a single cell of the grid.
+     */
+    private static final class Cell {
+
+        /** The image animated in this cell. */
+        private Drawable mDrawable;
+
+        /** The {@link TransitionGenerator} used to generate the transitions of this cell. */
+        private TransitionGenerator mTransGen = new RandomTransitionGenerator();
+
+        /** A {@link TransitionListener} to be notified when a transition of this cell
+         *  starts or ends. */
+        private TransitionListener mTransitionListener;
+
+        /** The ongoing transition. */
+        private Transition mTrans;
+
+        /** The progress of the animation, in milliseconds. Negative while
+         *  the first transition of this cell is being delayed. */
+        private long mElapsedTime;
+
+        /** The bounds of this cell within the view. */
+        private final RectF mBounds = new RectF();
+        /** The bounds of this cell, relative to its own top left corner. */
+        private final RectF mViewportRect = new RectF();
+        /** The bounds of {@link #mDrawable}. */
+        private final RectF mDrawableRect = new RectF();
+
+        /** Matrix used to perform the transition transformations of this cell. */
+        private final Matrix mMatrix = new Matrix();
+
+
+        /**
+         * Replaces the image animated in this cell.
+         * @param drawable the new image, or {@code null} to clear this cell.
+         * @param callback the view that hosts this cell.
+         */
+        private void setDrawable(Drawable drawable, Drawable.Callback callback) {
+            if (mDrawable != null) {
+                mDrawable.setCallback(null);
+            }
+            mDrawable = drawable;
+            mDrawableRect.setEmpty();
+            if (drawable != null) {
+                drawable.setCallback(callback);
+                int width = drawable.getIntrinsicWidth();
+                int height = drawable.getIntrinsicHeight();
+                if (width > 0 && height > 0) {
+                    drawable.setBounds(0, 0, width, height);
+                    mDrawableRect.set(0, 0, width, height);
+                }
+            }
+        }
+    }
+}
@@ -16,18 +16,44 @@
 package com.flaviofaria.kenburnsview;
 
 import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Matrix;
+import android.graphics.Paint;
 import android.graphics.RectF;
+import android.graphics.drawable.Animatable;
+import android.graphics.drawable.AnimationDrawable;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.Build;
+import android.os.Parcel;
+import android.os.Parcelable;
 import android.util.AttributeSet;
+import android.view.View;
+import android.view.animation.AccelerateDecelerateInterpolator;
+import android.view.animation.Interpolator;
 import android.widget.ImageView;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 /**
  * {@link ImageView} extension that animates its image with the
  * <a href="http://en.wikipedia.org/wiki/Ken_Burns_effect">Ken Burns Effect</a>.
+ * <p>
+ * Animated images are redrawn with the Ken Burns frames rather than on their own
+ * cadence. Only {@link AnimationDrawable}s are advanced by the
+ * {@link #setAnimationClock(AnimationClock) animation clock}, though. Other
+ * {@link Animatable}s, like {@link android.graphics.drawable.AnimatedVectorDrawable}s,
+ * keep running on their own schedule; only their redraws are deferred to the next Ken
+ * Burns frame, so they don't follow a simulated or shared clock, and a throttled
+ * frame rate shows fewer of their frames.
  * @author Flavio Faria
  * @see Transition
  * @see TransitionGenerator
@@ -37,6 +63,38 @@ public class KenBurnsView extends ImageView {
     /** Delay between a pair of frames at a 60 FPS frame rate. */
     private static final long FRAME_DELAY = 1000 / 60;
 
+    /** Leaves the bitmap filtering of the drawable as it is. This is the default quality. */
+    public static final int QUALITY_DEFAULT = 0;
+    /** Never filters the bitmap. This is the cheapest tier, but downscales may alias. */
+    public static final int QUALITY_LOW = 1;
+    /** Filters the bitmap, except in frames where it's drawn at nearly its original size. */
+    public static final int QUALITY_MEDIUM = 2;
+    /** Filters the bitmap and enables mipmaps in frames where it's heavily downscaled. */
+    public static final int QUALITY_HIGH = 3;
+
+    /** Maximum distance from 1 for a bitmap scale to be considered unscaled. */
+    private static final float UNSCALED_TOLERANCE = 0.02f;
+    /** Bitmap scale under which {@link #QUALITY_HIGH} enables mipmaps. */
+    private static final float MIPMAP_SCALE = 0.5f;
+    /** Bitmap scale above which {@link #QUALITY_HIGH} disables mipmaps again. The gap with
+     *  {@link #MIPMAP_SCALE} keeps zooms around it from regenerating mipmaps every frame. */
+    private static final float MIPMAP_RELEASE_SCALE = 0.6f;
+
+    /** Maximum relative scale change of a transition drawn as a pan. The scale left
+     *  over is applied when drawing the pre-scaled copy, so it doesn't drift. */
+    private static final float PAN_SCALE_TOLERANCE = 0.02f;
+
+    /** Thread pre-scaled pan bitmaps are built on, shared by all views. */
+    private static final ExecutorService PAN_EXECUTOR =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "KenBurnsPan");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     /** Matrix used to perform all the necessary transition transformations. */
     private final Matrix mMatrix = new Matrix();
 
@@ -48,13 +106,75 @@ public class KenBurnsView extends ImageView {
      *  a transition starts or ends. */
     private TransitionListener mTransitionListener;
 
+    /** A {@link KenBurnsView.ProgressListener} to be notified in every frame. */
+    private ProgressListener mProgressListener;
+
+    /** A {@link TransitionEventStream} that animation events are written into. */
+    private TransitionEventStream mEventStream;
+
+    /** The layers drawn on top of the image, from the bottom to the top. */
+    private final List<OverlayLayer> mOverlays = new ArrayList<OverlayLayer>();
+
+    /** A {@link FlightRecorder} that frames and transitions are recorded into. */
+    private FlightRecorder mFlightRecorder;
+
+    /** The rect of the ongoing transition shown in the current frame, to be recorded
+     *  into {@link #mFlightRecorder} once the frame is drawn. */
+    private final RectF mRecordedRect = new RectF();
+
+    /** A transition that started while a frame was being drawn. It's recorded into
+     *  {@link #mFlightRecorder} right after that frame, so records keep their order. */
+    private Transition mPendingRecordTrans;
+
+    /** Indicates whether a pause is the last playback state recorded
+     *  into {@link #mFlightRecorder}. */
+    private boolean mRecordedStopped;
+
+    /** Indicates whether {@link #onDraw(Canvas)} is running. */
+    private boolean mDrawing;
+
     /** The ongoing transition. */
     private Transition mCurrentTrans;
 
+    /** A {@link FrameCache} played back instead of rendering live, once it's built. */
+    private FrameCache mFrameCache;
+
+    /** The playback time, in milliseconds, within the loop of {@link #mFrameCache}. */
+    private long mCacheTime;
+
+    /** The index of the {@link #mFrameCache} transition shown in the current frame. */
+    private int mCacheIndex = -1;
+
+    /** The paint cached frames are scaled up to the viewport with. */
+    private final Paint mCachePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /** The {@link TransitionTimeline} transitions are taken from, if in timeline mode. */
+    private TransitionTimeline mTimeline;
+
+    /** The index of {@link #mCurrentTrans} in {@link #mTimeline}. */
+    private long mTimelineIndex = -1;
+
+    /** The playback time, in milliseconds, since the start of {@link #mTimeline}. */
+    private long mPlaybackTime;
+
+    /** Whether {@link #mTimeline} is anchored to {@link #mTimelineStartTime}. */
+    private boolean mTimelineAnchored;
+
+    /** The time of {@link #mClock}, in milliseconds, {@link #mTimeline} started at. */
+    private long mTimelineStartTime;
+
     /** The rect that holds the bounds of this view. */
     private final RectF mViewportRect = new RectF();
     /** The rect that holds the bounds of the current {@link Drawable}. */
     private RectF mDrawableRect;
+    /** The drawable bounds {@link #mCurrentTrans} was generated for. Rects of the
+     *  ongoing transition are relative to these bounds, which may differ from
+     *  {@link #mDrawableRect} when the image is replaced by another resolution of itself. */
+    private final RectF mTransDrawableRect = new RectF();
+    /** The current transition rect mapped into {@link #mDrawableRect}. */
+    private final RectF mMappedRect = new RectF();
+    /** Holds the rect of events published outside of a frame, once mapped. */
+    private final RectF mEventRect = new RectF();
 
     /** The progress of the animation, in milliseconds. */
     private long mElapsedTime;
@@ -64,14 +184,92 @@ public class KenBurnsView extends ImageView {
      * of the amount of time the animation has been paused. */
     private long mLastFrameTime;
 
+    /** The rendering quality tier, one of the {@code QUALITY_*} constants. */
+    private int mRenderQuality = QUALITY_DEFAULT;
+
+    /** Speed, in pixels per second, above which frames are drawn without filtering.
+     *  A value of {@code 0} disables this policy. */
+    private float mFastMotionThreshold;
+
+    /** Center of the rect shown in the last frame, used to measure the motion speed. */
+    private float mLastCenterX = Float.NaN;
+    private float mLastCenterY = Float.NaN;
+
+    /** Bitmap filtering applied to the current drawable. {@code -1} if it wasn't set yet. */
+    private int mAppliedFilter = -1;
+    /** The drawable whose bitmap filtering was changed, to be restored when it's no
+     *  longer drawn or the quality goes back to {@link #QUALITY_DEFAULT}. */
+    private Drawable mFilterDrawable;
+    /** The bitmap filtering {@link #mFilterDrawable} had before it was changed. */
+    private boolean mOriginalFilter;
+    /** Mipmap state applied to the current bitmap. {@code -1} if it wasn't set yet. */
+    private int mAppliedMipMap = -1;
+    /** The bitmap whose mipmap state was changed, to be restored when it's no longer
+     *  drawn or the quality goes back to {@link #QUALITY_DEFAULT}. */
+    private Bitmap mMipMapBitmap;
+    /** The mipmap state {@link #mMipMapBitmap} had before it was changed. */
+    private boolean mOriginalMipMap;
+
+    /** Indicates whether pan-only transitions are drawn from a pre-scaled bitmap. */
+    private boolean mPanFastPath;
+    /** The bitmap {@link #mPanBitmap} was scaled from. */
+    private Bitmap mPanSource;
+    /** The scale from drawable coordinates to {@link #mPanBitmap} coordinates. */
+    private float mPanScale;
+    /** A copy of the drawable bitmap at the on-screen scale of a pan-only transition. */
+    private Bitmap mPanBitmap;
+    /** Indicates whether {@link #mPanBitmap} is being scaled in the background. */
+    private boolean mPanBuilding;
+    /** Indicates whether the current frame is drawn from {@link #mPanBitmap}. */
+    private boolean mPanFrame;
+    /** The position {@link #mPanBitmap} is drawn at in the current frame. */
+    private float mPanX;
+    private float mPanY;
+    /** The scale {@link #mPanBitmap} is drawn at in the current frame, close to 1. */
+    private float mPanResidualScale;
+    /** The paint {@link #mPanBitmap} is drawn with, carrying the alpha and color filter
+     *  of the drawable paint. */
+    private final Paint mPanPaint = new Paint();
+
+    /** The current drawable, if it's a frame animation driven by the Ken Burns clock. */
+    private AnimationDrawable mFrameAnimation;
+    /** The progress of {@link #mFrameAnimation}, in milliseconds. */
+    private long mFrameAnimationTime;
+    /** The frame of {@link #mFrameAnimation} being shown. */
+    private int mFrameAnimationIndex;
+
+    /** The time source of the animation. */
+    private AnimationClock mClock = AnimationClock.SYSTEM;
+
     /** Controls whether the the animation is running. */
     private boolean mPaused;
 
+    /** Delay, in milliseconds, between a pair of frames. */
+    private long mFrameDelay = FRAME_DELAY;
+
+    /** Factor transition durations are stretched by. */
+    private float mDurationScale = 1;
+    /** Fraction of a millisecond of stretched playback carried over to the next frame. */
+    private double mFrameTimeRemainder;
+
+    /** Indicates whether the animation was paused by an {@link AnimationGovernor},
+     *  regardless of {@link #mPaused}. */
+    private boolean mGovernorPaused;
+
+    /** A {@link RetainedBitmapCache} decoded images are kept in across view instances. */
+    private RetainedBitmapCache mBitmapCache;
+
+    /** A saved state to resume the animation from once this view has bounds. */
+    private SavedState mRestoredState;
+
     /** Indicates whether the parent constructor was already called.
      * This is needed to distinguish if the image is being set before
      * or after the super class constructor returns. */
     private boolean mInitialized;
 
+    /** Indicates whether the image being set is another resolution of the current one. */
+    private boolean mUpgradingImage;
+
 
     public KenBurnsView(Context context) {
         this(context, null);
@@ -122,18 +320,223 @@ public class KenBurnsView extends ImageView {
 
     @Override
     public void setImageResource(int resId) {
+        String source = mBitmapCache != null ? getResourceKey(resId) : null;
+        Bitmap retained = source != null ? getRetainedBitmap(source) : null;
+        if (retained != null) {
+            setImageBitmap(retained);
+            return;
+        }
         super.setImageResource(resId);
+        if (source != null) {
+            retainBitmap(source);
+        }
         handleImageChange();
     }
 
 
     @Override
     public void setImageURI(Uri uri) {
+        Bitmap retained = uri != null ? getRetainedBitmap(uri.toString()) : null;
+        if (retained != null) {
+            setImageBitmap(retained);
+            return;
+        }
         super.setImageURI(uri);
+        if (uri != null) {
+            retainBitmap(uri.toString());
+        }
         handleImageChange();
     }
 
 
+    /**
+     * Builds the {@link #mBitmapCache} key of a resource. It holds the configuration
+     * qualifiers drawables can be picked by, so a configuration change that selects
+     * another variant of the resource, e.g. a landscape or night one, doesn't get the
+     * bitmap of the previous one.
+     * @param resId the resource id.
+     * @return the key.
+     */
+    private String getResourceKey(int resId) {
+        Resources res = getResources();
+        Configuration config = res.getConfiguration();
+        StringBuilder key = new StringBuilder("res:").append(resId)
+                .append('|').append(res.getDisplayMetrics().densityDpi)
+                .append('|').append(config.orientation)
+                .append('|').append(config.uiMode)
+                .append('|').append(config.screenLayout)
+                .append('|').append(config.locale);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB_MR2) {
+            key.append('|').append(config.screenWidthDp)
+                    .append('x').append(config.screenHeightDp)
+                    .append('|').append(config.smallestScreenWidthDp);
+        }
+        return key.toString();
+    }
+
+
+    /**
+     * Gets a bitmap from {@link #mBitmapCache}, if any.
+     * @param source the key of the bitmap source.
+     * @return the bitmap, or {@code null} if it isn't retained.
+     */
+    private Bitmap getRetainedBitmap(String source) {
+        return mBitmapCache != null ? mBitmapCache.get(source) : null;
+    }
+
+
+    /**
+     * Puts the bitmap of the current drawable into {@link #mBitmapCache}, if any.
+     * @param source the key of the bitmap source.
+     */
+    private void retainBitmap(String source) {
+        Drawable d = getDrawable();
+        if (mBitmapCache != null && d instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) d).getBitmap();
+            if (bitmap != null) {
+                mBitmapCache.put(source, bitmap);
+            }
+        }
+    }
+
+
+    /**
+     * Sets a {@link RetainedBitmapCache} to keep images set by resource or URI in,
+     * so a view recreated on a configuration change doesn't decode them again.
+     * Resources are keyed by id and the configuration qualifiers they're picked by.
+     * <p>
+     * An image set in XML with {@code android:src} is decoded by the constructor,
+     * before this cache can be set, so it's neither looked up nor retained. To retain
+     * it, leave it out of the layout and call {@link #setImageResource(int)} after this.
+     * @param bitmapCache the cache, e.g. {@link RetainedBitmapCache#getDefault()},
+     *                    or {@code null} to always decode images.
+     */
+    public void setBitmapCache(RetainedBitmapCache bitmapCache) {
+        mBitmapCache = bitmapCache;
+    }
+
+
+    /**
+     * Saves the ongoing transition and its progress, or the playback time of the timeline.
+     * As for any view, this is only called if this view has an id. The state of the
+     * {@link TransitionGenerator}, like the sequence of its {@link java.util.Random},
+     * isn't saved, so the transitions that follow the resumed one differ.
+     */
+    @Override
+    protected Parcelable onSaveInstanceState() {
+        SavedState state = new SavedState(super.onSaveInstanceState());
+        state.mPaused = mPaused;
+        if (mTimeline != null) {
+            state.mHasTimeline = true;
+            state.mTimelineSeed = mTimeline.getSeed();
+            state.mPlaybackTime = mPlaybackTime;
+        } else if (mRestoredState != null && mRestoredState.mSrcRect != null) {
+            // Still waiting for its image, e.g. behind a placeholder.
+            state.mSrcRect = mRestoredState.mSrcRect;
+            state.mDstRect = mRestoredState.mDstRect;
+            state.mDrawableRect = mRestoredState.mDrawableRect;
+            state.mDuration = mRestoredState.mDuration;
+            state.mElapsedTime = mRestoredState.mElapsedTime;
+        } else if (mCurrentTrans != null && mCurrentTrans.getDestinyRect() != null) {
+            state.mSrcRect = toArray(mCurrentTrans.getSourceRect());
+            state.mDstRect = toArray(mCurrentTrans.getDestinyRect());
+            state.mDrawableRect = toArray(mTransDrawableRect);
+            state.mDuration = mCurrentTrans.getDuration();
+            state.mElapsedTime = mElapsedTime;
+        }
+        return state;
+    }
+
+
+    @Override
+    protected void onRestoreInstanceState(Parcelable state) {
+        if (!(state instanceof SavedState)) {
+            super.onRestoreInstanceState(state);
+            return;
+        }
+        SavedState savedState = (SavedState) state;
+        super.onRestoreInstanceState(savedState.getSuperState());
+        mPaused = savedState.mPaused;
+        mRestoredState = savedState;
+        // Otherwise, it's resumed once the size of this view is known.
+        if (hasBounds() && mDrawableRect != null && !mDrawableRect.isEmpty()) {
+            startNewTransition();
+            invalidate();
+        }
+    }
+
+
+    /**
+     * Resumes the transition of {@link #mRestoredState}. If the viewport aspect ratio
+     * changed, e.g. on rotation, its rects are reshaped to the new one around the same
+     * centers, so the animation carries on from nearly the same frame. The state is kept
+     * while the drawable doesn't have the saved proportions, e.g. while a placeholder is
+     * shown until the image is loaded again.
+     * @return {@code false} if there's no transition to resume for the current drawable.
+     */
+    private boolean resumeRestoredTransition() {
+        SavedState state = mRestoredState;
+        if (state.mSrcRect == null) {
+            mRestoredState = null;
+            return false;
+        }
+        RectF drawableRect = toRect(state.mDrawableRect);
+        if (!MathUtils.haveSameAspectRatio(drawableRect, mDrawableRect)) {
+            return false; // It's a different image, or a placeholder.
+        }
+        mRestoredState = null;
+        RectF srcRect = toRect(state.mSrcRect);
+        RectF dstRect = toRect(state.mDstRect);
+        if (!MathUtils.haveSameAspectRatio(srcRect, mViewportRect)) {
+            float ratio = MathUtils.getRectRatio(mViewportRect);
+            srcRect = MathUtils.fitToAspectRatio(srcRect, ratio, drawableRect);
+            dstRect = MathUtils.fitToAspectRatio(dstRect, ratio, drawableRect);
+        }
+
+        Interpolator interpolator = mTransGen instanceof RandomTransitionGenerator
+                ? ((RandomTransitionGenerator) mTransGen).getTransitionInterpolator()
+                : new AccelerateDecelerateInterpolator();
+        mCurrentTrans = new Transition(srcRect, dstRect, state.mDuration, interpolator);
+        if (mTransGen instanceof RandomTransitionGenerator) {
+            // The next transition starts where the resumed one ends.
+            ((RandomTransitionGenerator) mTransGen).setLastTransition(mCurrentTrans,
+                    drawableRect);
+        }
+        mTransDrawableRect.set(drawableRect);
+        mElapsedTime = Math.min(state.mElapsedTime, state.mDuration);
+        mLastFrameTime = mClock.currentTimeMillis();
+        mLastCenterX = Float.NaN;
+
+        // Shows the resumed frame right away, even if the animation is paused.
+        RectF currentRect = MathUtils.mapRect(mCurrentTrans.getInterpolatedRect(mElapsedTime),
+                mTransDrawableRect, mDrawableRect, mMappedRect);
+        MathUtils.setTransitionMatrix(mMatrix, mDrawableRect, mViewportRect, currentRect);
+        setImageMatrix(mMatrix);
+        fireTransitionStart(mCurrentTrans);
+        return true;
+    }
+
+
+    /**
+     * Flattens a rect to be parcelled.
+     * @param rect the rect.
+     * @return its left, top, right and bottom coordinates.
+     */
+    private static float[] toArray(RectF rect) {
+        return new float[] {rect.left, rect.top, rect.right, rect.bottom};
+    }
+
+
+    /**
+     * Rebuilds a rect flattened by {@link #toArray(RectF)}.
+     * @param coords the left, top, right and bottom coordinates.
+     * @return the rect.
+     */
+    private static RectF toRect(float[] coords) {
+        return new RectF(coords[0], coords[1], coords[2], coords[3]);
+    }
+
+
     @Override
     public void setImageDrawable(Drawable drawable) {
         super.setImageDrawable(drawable);
@@ -151,8 +554,13 @@ public class KenBurnsView extends ImageView {
     @Override
     protected void onDraw(Canvas canvas) {
         Drawable d = getDrawable();
-        if (!mPaused && d != null) {
-            if (mDrawableRect.isEmpty()) {
+        boolean cached = isFrameCacheReady(d);
+        boolean framed = false;
+        mDrawing = true;
+        if (!mPaused && !mGovernorPaused && d != null) {
+            if (cached) {
+                framed = advanceCachedFrame();
+            } else if (mDrawableRect.isEmpty()) {
                 updateDrawableBounds();
             } else if (hasBounds()) {
                 if (mCurrentTrans == null) { // Starting the first transition.
@@ -160,34 +568,38 @@ public class KenBurnsView extends ImageView {
                 }
 
                 if (mCurrentTrans.getDestinyRect() != null) { // If null, it's supposed to stop.
-                    mElapsedTime += System.currentTimeMillis() - mLastFrameTime;
+                    // A clock stepped back, e.g. by a sync correction, mustn't play backwards.
+                    long frameTime = Math.max(mClock.currentTimeMillis() - mLastFrameTime, 0);
+                    frameTime = scaleFrameTime(frameTime);
+                    if (mTimeline != null) {
+                        mPlaybackTime += frameTime;
+                        syncTimeline();
+                    } else {
+                        mElapsedTime += frameTime;
+                    }
                     RectF currentRect = mCurrentTrans.getInterpolatedRect(mElapsedTime);
-
-                    float widthScale = mDrawableRect.width() / currentRect.width();
-                    float heightScale = mDrawableRect.height() / currentRect.height();
-                    // Scale to make the current rect match the smallest drawable dimension.
-                    float currRectToDrwScale = Math.min(widthScale, heightScale);
-                    // Scale to make the current rect match the viewport bounds.
-                    float vpWidthScale = mViewportRect.width() / currentRect.width();
-                    float vpHeightScale = mViewportRect.height() / currentRect.height();
-                    float currRectToVpScale = Math.min(vpWidthScale, vpHeightScale);
-                    // Combines the two scales to fill the viewport with the current rect.
-                    float totalScale = currRectToDrwScale * currRectToVpScale;
-
-                    float translX = totalScale * (mDrawableRect.centerX() - currentRect.left);
-                    float translY = totalScale * (mDrawableRect.centerY() - currentRect.top);
+                    if (!mTransDrawableRect.equals(mDrawableRect)) {
+                        currentRect = MathUtils.mapRect(currentRect, mTransDrawableRect,
+                                mDrawableRect, mMappedRect);
+                    }
+                    if (mFlightRecorder != null) {
+                        mRecordedRect.set(currentRect);
+                        framed = true;
+                    }
 
                     /* Performs matrix transformations to fit the content
                        of the current rect into the entire view. */
-                    mMatrix.reset();
-                    mMatrix.postTranslate(-mDrawableRect.width() / 2, -mDrawableRect.height() / 2);
-                    mMatrix.postScale(totalScale, totalScale);
-                    mMatrix.postTranslate(translX, translY);
-
+                    float totalScale = MathUtils.setTransitionMatrix(mMatrix,
+                            mDrawableRect, mViewportRect, currentRect);
                     setImageMatrix(mMatrix);
+                    applyRenderQuality(d, currentRect, totalScale, frameTime);
+                    preparePanFrame(d, currentRect, totalScale);
+                    advanceFrameAnimation(frameTime);
+                    fireTransitionProgress(currentRect, totalScale);
+                    publishEvent(TransitionEventStream.EVENT_FRAME, mCurrentTrans, currentRect);
 
                     // Current transition is over. It's time to start a new one.
-                    if (mElapsedTime >= mCurrentTrans.getDuration()) {
+                    if (mTimeline == null && mElapsedTime >= mCurrentTrans.getDuration()) {
                         fireTransitionEnd(mCurrentTrans);
                         startNewTransition();
                     }
@@ -195,10 +607,381 @@ public class KenBurnsView extends ImageView {
                     fireTransitionEnd(mCurrentTrans);
                 }
             }
-            mLastFrameTime = System.currentTimeMillis();
-            postInvalidateDelayed(FRAME_DELAY);
+            mLastFrameTime = mClock.currentTimeMillis();
+            postInvalidateDelayed(mFrameDelay);
+        }
+        long drawStart = framed ? System.nanoTime() : 0;
+        if (cached) {
+            // The viewport is laid out within the padding, as the image matrix is.
+            int saveCount = canvas.save();
+            canvas.translate(getPaddingLeft(), getPaddingTop());
+            canvas.drawBitmap(mFrameCache.getFrame(mCacheTime), null, mViewportRect,
+                    mCachePaint);
+            canvas.restoreToCount(saveCount);
+        } else if (mPanFrame) {
+            int saveCount = canvas.save();
+            canvas.translate(getPaddingLeft() + mPanX, getPaddingTop() + mPanY);
+            canvas.scale(mPanResidualScale, mPanResidualScale);
+            canvas.drawBitmap(mPanBitmap, 0, 0, mPanPaint);
+            canvas.restoreToCount(saveCount);
+        } else {
+            super.onDraw(canvas);
+        }
+        drawOverlays(canvas);
+        if (framed) {
+            mFlightRecorder.recordFrame(mLastFrameTime, System.nanoTime() - drawStart,
+                    (int) mFrameDelay, mRecordedRect);
+        }
+        mDrawing = false;
+        if (mPendingRecordTrans != null) {
+            if (mFlightRecorder != null) {
+                recordTransition(mLastFrameTime, mPendingRecordTrans);
+            }
+            mPendingRecordTrans = null;
+        }
+    }
+
+
+    /**
+     * Checks whether the current frame is drawn from {@link #mFrameCache}. It's only used
+     * outside timeline mode, once it's built for the current bitmap and view size.
+     * @param d the drawable of this view.
+     * @return {@code true} if the frame cache is played back.
+     */
+    private boolean isFrameCacheReady(Drawable d) {
+        return mFrameCache != null && mTimeline == null && d instanceof BitmapDrawable
+                && mDrawableRect != null && !mDrawableRect.isEmpty()
+                && mFrameCache.isReady(((BitmapDrawable) d).getBitmap(),
+                getWidth(), getHeight());
+    }
+
+
+    /**
+     * Advances the playback of {@link #mFrameCache}. The cached transitions become the
+     * ongoing ones, so listeners, events and the flight recorder are fed as in live
+     * rendering, and live rendering carries on from the same frame if the cache is dropped.
+     * @return {@code true} if the frame has to be recorded into {@link #mFlightRecorder}.
+     */
+    private boolean advanceCachedFrame() {
+        long frameTime = Math.max(mClock.currentTimeMillis() - mLastFrameTime, 0);
+        frameTime = scaleFrameTime(frameTime);
+        long loopDuration = mFrameCache.getLoopDuration();
+        boolean looped = mCacheTime + frameTime >= loopDuration;
+        mCacheTime = (mCacheTime + frameTime) % loopDuration;
+        int index = mFrameCache.getTransitionIndex(mCacheTime);
+        boolean changed = index != mCacheIndex || looped;
+        if (changed) {
+            fireTransitionEnd(mCurrentTrans);
+            mCacheIndex = index;
+            mCurrentTrans = mFrameCache.getTransition(index);
+            Bitmap source = mFrameCache.getSource();
+            mTransDrawableRect.set(0, 0, source.getWidth(), source.getHeight());
+        }
+        mElapsedTime = mCacheTime - mFrameCache.getStartTime(index);
+        if (changed) { // Fired once the progress is the one of the new transition.
+            fireTransitionStart(mCurrentTrans);
+        }
+
+        RectF currentRect = MathUtils.mapRect(mCurrentTrans.getInterpolatedRect(mElapsedTime),
+                mTransDrawableRect, mDrawableRect, mMappedRect);
+        float totalScale = MathUtils.setTransitionMatrix(mMatrix,
+                mDrawableRect, mViewportRect, currentRect);
+        // Keeps the image matrix in sync, in case live rendering takes over.
+        setImageMatrix(mMatrix);
+        fireTransitionProgress(currentRect, totalScale);
+        publishEvent(TransitionEventStream.EVENT_FRAME, mCurrentTrans, currentRect);
+        if (mFlightRecorder != null) {
+            mRecordedRect.set(currentRect);
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Draws the overlay layers on top of the image.
+     * @param canvas the canvas of this view.
+     */
+    private void drawOverlays(Canvas canvas) {
+        int width = getWidth();
+        int height = getHeight();
+        for (int i = 0; i < mOverlays.size(); i++) {
+            mOverlays.get(i).draw(canvas, width, height);
+        }
+    }
+
+
+    /**
+     * Adds a layer to be drawn on top of the image and of the layers added before.
+     * @param overlay the layer to be added.
+     */
+    public void addOverlay(OverlayLayer overlay) {
+        mOverlays.add(overlay);
+        overlay.setHost(this);
+        invalidate();
+    }
+
+
+    /**
+     * Removes a layer drawn on top of the image.
+     * @param overlay the layer to be removed.
+     */
+    public void removeOverlay(OverlayLayer overlay) {
+        if (mOverlays.remove(overlay)) {
+            overlay.setHost(null);
+        }
+        invalidate();
+    }
+
+
+    /**
+     * Chooses the bitmap filtering and mipmapping for the current frame according
+     * to {@link #mRenderQuality}, the scale the bitmap is drawn at and how fast
+     * the image is moving.
+     * @param d the drawable being drawn.
+     * @param currentRect the rect shown in the current frame.
+     * @param totalScale the scale the drawable is drawn at in the current frame.
+     * @param frameTime the time, in milliseconds, since the last frame.
+     */
+    private void applyRenderQuality(Drawable d, RectF currentRect,
+                                    float totalScale, long frameTime) {
+        float centerX = currentRect.centerX();
+        float centerY = currentRect.centerY();
+        boolean movingFast = false;
+        if (mFastMotionThreshold > 0 && frameTime > 0 && !Float.isNaN(mLastCenterX)) {
+            float dx = centerX - mLastCenterX;
+            float dy = centerY - mLastCenterY;
+            float speed = (float) Math.sqrt(dx * dx + dy * dy) * totalScale * 1000 / frameTime;
+            movingFast = speed > mFastMotionThreshold;
+        }
+        mLastCenterX = centerX;
+        mLastCenterY = centerY;
+
+        if (mRenderQuality == QUALITY_DEFAULT) {
+            restoreMipMap();
+            if (!movingFast) {
+                restoreFilter(); // In case a fast motion, or another tier, changed it.
+                return;
+            }
+        }
+
+        Bitmap bitmap = null;
+        float bitmapScale = totalScale;
+        if (d instanceof BitmapDrawable) {
+            bitmap = ((BitmapDrawable) d).getBitmap();
+            if (bitmap != null && bitmap.getWidth() > 0) {
+                // The intrinsic size of the drawable may differ from the bitmap size.
+                bitmapScale *= mDrawableRect.width() / bitmap.getWidth();
+            }
+        }
+
+        boolean filter;
+        boolean mipMap = false;
+        if (movingFast || mRenderQuality == QUALITY_LOW) {
+            filter = false;
+        } else if (mRenderQuality == QUALITY_MEDIUM) {
+            filter = Math.abs(bitmapScale - 1) > UNSCALED_TOLERANCE;
+        } else {
+            filter = true;
+            // Mipmaps stay on until the scale clearly leaves the downscaled range.
+            float mipMapScale = mAppliedMipMap == 1 ? MIPMAP_RELEASE_SCALE : MIPMAP_SCALE;
+            mipMap = mRenderQuality == QUALITY_HIGH && bitmapScale < mipMapScale;
+        }
+
+        if (mAppliedFilter != (filter ? 1 : 0)) {
+            if (mFilterDrawable != d) {
+                restoreFilter();
+                mFilterDrawable = d;
+                mOriginalFilter = isFilterBitmap(d);
+            }
+            mAppliedFilter = filter ? 1 : 0;
+            d.setFilterBitmap(filter);
+        }
+        if (bitmap != null && mRenderQuality != QUALITY_DEFAULT
+                && mAppliedMipMap != (mipMap ? 1 : 0)
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            if (mMipMapBitmap != bitmap) {
+                restoreMipMap();
+                mMipMapBitmap = bitmap;
+                mOriginalMipMap = bitmap.hasMipMap();
+            }
+            mAppliedMipMap = mipMap ? 1 : 0;
+            bitmap.setHasMipMap(mipMap);
+        }
+    }
+
+
+    /**
+     * Gives {@link #mFilterDrawable}, if any, back the bitmap filtering it had before
+     * {@link #applyRenderQuality} changed it, since drawables loaded from the same
+     * resource share their paint.
+     */
+    private void restoreFilter() {
+        if (mFilterDrawable != null) {
+            mFilterDrawable.setFilterBitmap(mOriginalFilter);
+            mFilterDrawable = null;
+        }
+        mAppliedFilter = -1;
+    }
+
+
+    /**
+     * Checks whether a drawable filters its bitmap.
+     * @param d the drawable.
+     * @return whether {@code d} filters its bitmap. Drawables other than
+     *         {@link BitmapDrawable}s are assumed to, as most do by default.
+     */
+    private static boolean isFilterBitmap(Drawable d) {
+        if (d instanceof BitmapDrawable) {
+            return ((BitmapDrawable) d).getPaint().isFilterBitmap();
+        }
+        return true;
+    }
+
+
+    /**
+     * Gives {@link #mMipMapBitmap}, if any, back the mipmap state it had before
+     * {@link #applyRenderQuality} changed it, since other drawables may share it.
+     */
+    private void restoreMipMap() {
+        if (mMipMapBitmap != null
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            mMipMapBitmap.setHasMipMap(mOriginalMipMap);
+            mMipMapBitmap = null;
+            mAppliedMipMap = -1;
+        }
+    }
+
+
+    /**
+     * Sets the rendering quality tier. Bitmap filtering and mipmaps are then
+     * chosen in every frame according to the scale the bitmap is drawn at.
+     * Note that mipmaps are a property of the {@link Bitmap}, so they affect
+     * any other drawable sharing it while it's shown here. The original state is
+     * restored when the image changes or the quality goes back to {@link #QUALITY_DEFAULT}.
+     * @param quality one of {@link #QUALITY_DEFAULT}, {@link #QUALITY_LOW},
+     *                {@link #QUALITY_MEDIUM} or {@link #QUALITY_HIGH}.
+     */
+    public void setRenderQuality(int quality) {
+        mRenderQuality = quality;
+        invalidate();
+    }
+
+
+    /**
+     * Draws frames without bitmap filtering while the image moves faster than
+     * a given speed, when the lower quality isn't noticeable.
+     * @param pixelsPerSecond the on-screen speed above which filtering is turned off,
+     *                        or {@code 0} to always respect the rendering quality tier.
+     */
+    public void setLowQualityWhileMoving(float pixelsPerSecond) {
+        mFastMotionThreshold = pixelsPerSecond;
+    }
+
+
+    /**
+     * Chooses whether the current frame is drawn from {@link #mPanBitmap}. That's the case
+     * for pan-only transitions, whose frames only differ by a translation: a copy of the
+     * bitmap at the on-screen scale is built once in the background, and then drawn at
+     * a sub-pixel offset instead of the whole bitmap being scaled in every frame.
+     * Transitions whose scale changes by up to {@link #PAN_SCALE_TOLERANCE} qualify too:
+     * the copy is drawn at the small scale left over, so frames match the ones drawn
+     * through the image matrix. Tinted images are always drawn through the image matrix,
+     * since the tint can't be carried over.
+     * @param d the drawable of this view.
+     * @param currentRect the rect shown in the current frame.
+     * @param totalScale the scale the drawable is drawn at in the current frame.
+     */
+    private void preparePanFrame(Drawable d, RectF currentRect, float totalScale) {
+        mPanFrame = false;
+        if (!mPanFastPath || !(d instanceof BitmapDrawable)
+                || !mCurrentTrans.isPanOnly(PAN_SCALE_TOLERANCE) || isTinted()) {
+            return;
+        }
+        Bitmap bitmap = ((BitmapDrawable) d).getBitmap();
+        if (bitmap == null) {
+            return;
+        }
+        if (mPanSource != bitmap
+                || Math.abs(totalScale / mPanScale - 1) > PAN_SCALE_TOLERANCE) {
+            if (!mPanBuilding) {
+                buildPanBitmap(bitmap, totalScale);
+            }
+        } else if (mPanBitmap != null) {
+            Paint drawablePaint = ((BitmapDrawable) d).getPaint();
+            mPanPaint.setAlpha(drawablePaint.getAlpha());
+            mPanPaint.setColorFilter(drawablePaint.getColorFilter());
+            mPanPaint.setFilterBitmap(drawablePaint.isFilterBitmap());
+            mPanX = -currentRect.left * totalScale;
+            mPanY = -currentRect.top * totalScale;
+            mPanResidualScale = totalScale / mPanScale;
+            mPanFrame = true;
+        }
+    }
+
+
+    /**
+     * Checks whether a tint is applied to the image of this view.
+     * @return {@code true} if the image is tinted.
+     */
+    private boolean isTinted() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP
+                && getImageTintList() != null;
+    }
+
+
+    /**
+     * Scales a copy of the drawable bitmap in the background, to be set as
+     * {@link #mPanBitmap} on the UI thread. If it can't be allocated, frames
+     * keep being drawn through the image matrix.
+     * @param bitmap the bitmap of the drawable.
+     * @param scale the scale from drawable coordinates to the copy coordinates.
+     */
+    private void buildPanBitmap(final Bitmap bitmap, final float scale) {
+        mPanBuilding = true;
+        final int width = Math.max(1, Math.round(mDrawableRect.width() * scale));
+        final int height = Math.max(1, Math.round(mDrawableRect.height() * scale));
+        PAN_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap scaled;
+                try {
+                    scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+                } catch (OutOfMemoryError e) {
+                    scaled = null;
+                }
+                final Bitmap result = scaled;
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mPanBuilding = false;
+                        // Kept even if it failed, so it's not retried for the same scale.
+                        mPanSource = bitmap;
+                        mPanScale = scale;
+                        mPanBitmap = result;
+                    }
+                });
+            }
+        });
+    }
+
+
+    /**
+     * Sets whether pan-only transitions, whose source and destiny rects have nearly
+     * the same size, are drawn from a copy of the bitmap pre-scaled to the on-screen
+     * size. This saves scaling the whole bitmap in every frame, at the cost of the
+     * memory taken by the copy, which is built on a background thread. Only applies to
+     * {@link BitmapDrawable}s. Disabled by default.
+     * @param enabled whether the fast path is enabled.
+     */
+    public void setPanFastPathEnabled(boolean enabled) {
+        mPanFastPath = enabled;
+        if (!enabled) {
+            mPanFrame = false;
+            mPanSource = null;
+            mPanBitmap = null;
         }
-        super.onDraw(canvas);
+        invalidate();
     }
 
 
@@ -209,13 +992,125 @@ public class KenBurnsView extends ImageView {
         if (!hasBounds()) {
             return; // Can't start transition if the drawable has no bounds.
         }
+        if (mTimeline != null) {
+            if (mDrawableRect == null || mDrawableRect.isEmpty()) {
+                return; // The timeline can't be generated without drawable bounds.
+            }
+            if (mRestoredState != null) {
+                if (mRestoredState.mHasTimeline
+                        && mRestoredState.mTimelineSeed == mTimeline.getSeed()) {
+                    mPlaybackTime = mRestoredState.mPlaybackTime;
+                }
+                mRestoredState = null;
+            }
+            mTimeline.setBounds(mDrawableRect, mViewportRect);
+            mTransDrawableRect.set(mDrawableRect);
+            mTimelineIndex = -1;
+            mLastFrameTime = mClock.currentTimeMillis();
+            syncTimeline();
+            return;
+        }
+        if (mRestoredState != null && mDrawableRect != null && !mDrawableRect.isEmpty()
+                && resumeRestoredTransition()) {
+            return;
+        }
         mCurrentTrans = mTransGen.generateNextTransition(mDrawableRect, mViewportRect);
+        mTransDrawableRect.set(mDrawableRect);
         mElapsedTime = 0;
-        mLastFrameTime = System.currentTimeMillis();
+        mLastFrameTime = mClock.currentTimeMillis();
+        mLastCenterX = Float.NaN;
         fireTransitionStart(mCurrentTrans);
     }
 
 
+    /**
+     * Moves {@link #mCurrentTrans} and {@link #mElapsedTime} to the transition of
+     * {@link #mTimeline} that plays at {@link #mPlaybackTime}, firing transition
+     * events if it's not the current one.
+     */
+    private void syncTimeline() {
+        if (mTimelineAnchored) {
+            mPlaybackTime = Math.max(mClock.currentTimeMillis() - mTimelineStartTime, 0);
+        }
+        long index = mTimeline.getTransitionIndex(mPlaybackTime);
+        boolean changed = index != mTimelineIndex;
+        if (changed) {
+            fireTransitionEnd(mCurrentTrans);
+            mTimelineIndex = index;
+            mCurrentTrans = mTimeline.getTransition(index);
+        }
+        mElapsedTime = mPlaybackTime - mTimeline.getStartTime(index);
+        if (changed) { // Fired once the progress is the one of the new transition.
+            fireTransitionStart(mCurrentTrans);
+        }
+    }
+
+
+    /**
+     * Sets a {@link TransitionTimeline} to take transitions from. In timeline mode,
+     * the playback time can be moved to any point with {@link #seekTo(long)}.
+     * @param timeline the timeline to be played, or {@code null} to leave timeline mode
+     *                 and go back to the {@link TransitionGenerator}.
+     */
+    public void setTransitionTimeline(TransitionTimeline timeline) {
+        mTimeline = timeline;
+        mTimelineIndex = -1;
+        mPlaybackTime = 0;
+        mTimelineAnchored = false;
+        startNewTransition();
+    }
+
+
+    /**
+     * Anchors the {@link TransitionTimeline} to an absolute time of the animation clock.
+     * The playback time is then computed from the clock in every frame instead of being
+     * accumulated, so views that share a clock (see {@link ClockSyncClient}), a timeline
+     * seed and a start time show the same frame, even across devices. Pausing doesn't
+     * hold the playback back: it catches up with the schedule on resume. For the same
+     * reason, an {@link AnimationGovernor} doesn't stretch the transitions of an anchored
+     * timeline, it only lowers the frame rate.
+     * @param startTime the time, in milliseconds, of the animation clock
+     *                  the timeline started at.
+     */
+    public void setTimelineStartTime(long startTime) {
+        mTimelineAnchored = true;
+        mTimelineStartTime = startTime;
+        if (mTimeline != null && mTimelineIndex >= 0) {
+            syncTimeline();
+        }
+        invalidate();
+    }
+
+
+    /**
+     * Moves the playback to a given time of the {@link TransitionTimeline}.
+     * Nothing happens if not in timeline mode.
+     * @param time the playback time, in milliseconds.
+     */
+    public void seekTo(long time) {
+        if (mTimeline == null) {
+            return;
+        }
+        mPlaybackTime = Math.max(time, 0);
+        if (mTimelineAnchored) {
+            mTimelineStartTime = mClock.currentTimeMillis() - mPlaybackTime;
+        }
+        if (mTimelineIndex >= 0) { // Otherwise, the timeline bounds aren't known yet.
+            syncTimeline();
+        }
+        invalidate();
+    }
+
+
+    /**
+     * Gets the playback time of the {@link TransitionTimeline}.
+     * @return the playback time, in milliseconds, or {@code 0} if not in timeline mode.
+     */
+    public long getPlaybackTime() {
+        return mTimeline != null ? mPlaybackTime : 0;
+    }
+
+
     /**
      * Creates a new transition and starts over.
      */
@@ -251,6 +1146,79 @@ public class KenBurnsView extends ImageView {
         if (mTransitionListener != null && transition != null) {
             mTransitionListener.onTransitionStart(transition);
         }
+        if (transition != null) {
+            publishEvent(TransitionEventStream.EVENT_TRANSITION_START, transition, null);
+            if (mFlightRecorder != null && mDrawing) {
+                mPendingRecordTrans = transition;
+            } else if (mFlightRecorder != null) {
+                recordTransition(mClock.currentTimeMillis(), transition);
+            }
+        }
+    }
+
+
+    /**
+     * Records a started transition into {@link #mFlightRecorder}, with its rects mapped
+     * into the current drawable bounds like the frames are.
+     * @param time the time the transition started at, in milliseconds.
+     * @param transition the transition.
+     */
+    private void recordTransition(long time, Transition transition) {
+        RectF srcRect = transition.getSourceRect();
+        RectF dstRect = transition.getDestinyRect();
+        if (dstRect == null) {
+            return; // Not a transition that moves.
+        }
+        if (!mTransDrawableRect.equals(mDrawableRect)) {
+            srcRect = MathUtils.mapRect(srcRect, mTransDrawableRect, mDrawableRect, new RectF());
+            dstRect = MathUtils.mapRect(dstRect, mTransDrawableRect, mDrawableRect, new RectF());
+        }
+        mFlightRecorder.recordTransition(time, transition.getDuration(), srcRect, dstRect);
+    }
+
+
+    /**
+     * Records into {@link #mFlightRecorder} whether frames stopped or started being drawn,
+     * because the animation was paused or resumed, or this view was hidden or shown.
+     */
+    private void recordPlaybackState() {
+        if (mFlightRecorder == null) {
+            return;
+        }
+        boolean stopped = mPaused || mGovernorPaused || !isShown()
+                || getWindowVisibility() != VISIBLE;
+        if (stopped != mRecordedStopped) {
+            mRecordedStopped = stopped;
+            if (stopped) {
+                mFlightRecorder.recordPause(mClock.currentTimeMillis());
+            } else {
+                mFlightRecorder.recordResume(mClock.currentTimeMillis());
+            }
+        }
+    }
+
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        recordPlaybackState();
+        syncFrameAnimation();
+    }
+
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        recordPlaybackState();
+        syncFrameAnimation();
+    }
+
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // The super call makes the drawable visible, which rewinds frame animations.
+        syncFrameAnimation();
     }
 
 
@@ -262,6 +1230,61 @@ public class KenBurnsView extends ImageView {
         if (mTransitionListener != null && transition != null) {
             mTransitionListener.onTransitionEnd(transition);
         }
+        if (transition != null) {
+            publishEvent(TransitionEventStream.EVENT_TRANSITION_END, transition, null);
+        }
+    }
+
+
+    /**
+     * Fires a progress event on {@link #mProgressListener}.
+     * @param currentRect the rect shown in the current frame.
+     * @param scale the scale the drawable is drawn at in the current frame.
+     */
+    private void fireTransitionProgress(RectF currentRect, float scale) {
+        if (mProgressListener != null) {
+            float progress = Math.min(mElapsedTime / (float) mCurrentTrans.getDuration(), 1);
+            mProgressListener.onTransitionProgress(progress, currentRect.left,
+                    currentRect.top, currentRect.right, currentRect.bottom, scale);
+        }
+    }
+
+
+    /**
+     * Writes an event about the ongoing transition into {@link #mEventStream}, if any.
+     * @param type one of the {@code TransitionEventStream.EVENT_*} constants.
+     */
+    private void publishEvent(int type) {
+        publishEvent(type, mCurrentTrans, null);
+    }
+
+
+    /**
+     * Writes an event into {@link #mEventStream}, if any. Its rect is relative to the
+     * current drawable bounds, like the ones of {@link #mFlightRecorder}.
+     * @param type one of the {@code TransitionEventStream.EVENT_*} constants.
+     * @param transition the transition the event refers to, if any.
+     * @param currentRect the rect shown in the current frame, already relative to the
+     *                    current drawable bounds, or {@code null} to compute it from
+     *                    {@code transition} and {@link #mElapsedTime}.
+     */
+    private void publishEvent(int type, Transition transition, RectF currentRect) {
+        if (mEventStream == null) {
+            return;
+        }
+        long time = mClock.currentTimeMillis();
+        if (transition == null) {
+            mEventStream.publish(type, time, null, 0, 0);
+            return;
+        }
+        if (currentRect == null) {
+            currentRect = transition.getInterpolatedRect(mElapsedTime);
+            if (!mTransDrawableRect.equals(mDrawableRect)) {
+                currentRect = MathUtils.mapRect(currentRect, mTransDrawableRect,
+                        mDrawableRect, mEventRect);
+            }
+        }
+        mEventStream.publish(type, time, currentRect, mElapsedTime, transition.getDuration());
     }
 
 
@@ -271,6 +1294,9 @@ public class KenBurnsView extends ImageView {
      */
     public void setTransitionGenerator(TransitionGenerator transgen) {
         mTransGen = transgen;
+        if (transgen instanceof RandomTransitionGenerator) {
+            ((RandomTransitionGenerator) transgen).onImageChanged(getDrawable(), false);
+        }
         startNewTransition();
     }
 
@@ -306,13 +1332,178 @@ public class KenBurnsView extends ImageView {
      */
     private void handleImageChange() {
         updateDrawableBounds();
+        restoreFilter();
+        restoreMipMap();
+        mAppliedMipMap = -1;
+        mPanFrame = false;
+        mPanSource = null;
+        mPanBitmap = null;
+        Drawable d = getDrawable();
+        if (mFrameCache != null && !(d instanceof BitmapDrawable
+                && ((BitmapDrawable) d).getBitmap() == mFrameCache.getSource())) {
+            mFrameCache = null; // Its frames show another image.
+        }
+        updateFrameAnimation();
+        boolean upgrade = mUpgradingImage && isResolutionChange();
+        // Null during the super constructor execution.
+        if (mTransGen instanceof RandomTransitionGenerator) {
+            ((RandomTransitionGenerator) mTransGen).onImageChanged(d, upgrade);
+        }
         /* Don't start a new transition if this event
          was fired during the super constructor execution.
          The view won't be ready at this time. Also,
          don't start it if this view size is still unknown. */
         if (mInitialized) {
-            startNewTransition();
+            publishEvent(TransitionEventStream.EVENT_IMAGE_CHANGE);
+            if (!upgrade) {
+                startNewTransition();
+            }
+        }
+    }
+
+
+    /**
+     * Takes over the frame scheduling of the current drawable if it's an
+     * {@link AnimationDrawable}, so its frames advance with the Ken Burns clock
+     * instead of in a loop of their own. Other animated drawables aren't taken over.
+     */
+    private void updateFrameAnimation() {
+        Drawable d = getDrawable();
+        if (d == mFrameAnimation) {
+            return;
+        }
+        mFrameAnimation = null;
+        if (d instanceof AnimationDrawable && ((AnimationDrawable) d).getNumberOfFrames() > 0) {
+            AnimationDrawable animation = (AnimationDrawable) d;
+            animation.stop();
+            animation.selectDrawable(0);
+            mFrameAnimation = animation;
+            mFrameAnimationTime = 0;
+            mFrameAnimationIndex = 0;
+        }
+    }
+
+
+    /**
+     * Advances {@link #mFrameAnimation}, if any, to the frame that must be
+     * shown after {@code frameTime} more milliseconds.
+     * @param frameTime the time, in milliseconds, since the last frame.
+     */
+    private void advanceFrameAnimation(long frameTime) {
+        AnimationDrawable animation = mFrameAnimation;
+        if (animation == null) {
+            return;
+        }
+        int frameCount = animation.getNumberOfFrames();
+        long totalDuration = 0;
+        for (int i = 0; i < frameCount; i++) {
+            totalDuration += animation.getDuration(i);
+        }
+        if (totalDuration <= 0) {
+            return;
+        }
+        mFrameAnimationTime += frameTime;
+        long time;
+        if (animation.isOneShot()) {
+            time = Math.min(mFrameAnimationTime, totalDuration - 1);
+        } else {
+            time = mFrameAnimationTime % totalDuration;
+        }
+        int index = 0;
+        while (index < frameCount - 1 && time >= animation.getDuration(index)) {
+            time -= animation.getDuration(index);
+            index++;
         }
+        mFrameAnimationIndex = index;
+        syncFrameAnimation();
+    }
+
+
+    /**
+     * Shows the frame of {@link #mFrameAnimation}, if any, picked by the Ken Burns clock.
+     * {@link AnimationDrawable} tracks its frame on its own, and rewinds to it when it's
+     * made visible, e.g. when this view is attached, so the frame shown is checked rather
+     * than assumed.
+     */
+    private void syncFrameAnimation() {
+        AnimationDrawable animation = mFrameAnimation;
+        if (animation != null
+                && animation.getCurrent() != animation.getFrame(mFrameAnimationIndex)) {
+            animation.selectDrawable(mFrameAnimationIndex);
+        }
+    }
+
+
+    /**
+     * Checks whether the Ken Burns frame loop is running, so the drawable
+     * gets redrawn in the next tick anyway.
+     * @return {@code true} if the frame loop is running.
+     */
+    private boolean isAnimating() {
+        return !mPaused && !mGovernorPaused && mCurrentTrans != null;
+    }
+
+
+    @Override
+    public void invalidateDrawable(Drawable dr) {
+        /* Animated drawables would otherwise be redrawn in their own cadence
+           on top of the Ken Burns one. Their current frame is picked up by the
+           next Ken Burns frame instead. */
+        if (dr == getDrawable() && dr instanceof Animatable && isAnimating()) {
+            return;
+        }
+        super.invalidateDrawable(dr);
+    }
+
+
+    @Override
+    public void scheduleDrawable(Drawable who, Runnable what, long when) {
+        if (who != null && who == mFrameAnimation) {
+            return; // Its frames are advanced by the Ken Burns clock.
+        }
+        super.scheduleDrawable(who, what, when);
+    }
+
+
+    /**
+     * Replaces the image with another resolution of itself, e.g. a low resolution
+     * placeholder with the full image. If the aspect ratio is kept, the ongoing
+     * transition carries on over the new image instead of restarting, so there's
+     * no visible discontinuity. Other image setters always start a new transition.
+     * @param drawable the same image at another resolution.
+     */
+    public void setImageUpgrade(Drawable drawable) {
+        mUpgradingImage = true;
+        setImageDrawable(drawable);
+        mUpgradingImage = false;
+    }
+
+
+    /**
+     * Replaces the image with another resolution of itself.
+     * @param bitmap the same image at another resolution.
+     * @see #setImageUpgrade(Drawable)
+     */
+    public void setImageUpgrade(Bitmap bitmap) {
+        mUpgradingImage = true;
+        setImageBitmap(bitmap);
+        mUpgradingImage = false;
+    }
+
+
+    /**
+     * Checks whether the ongoing transition can be carried over to an image set by
+     * {@link #setImageUpgrade(Drawable)}. In this case, it's just mapped into the new
+     * drawable bounds, so there's no visible discontinuity.
+     * @return {@code true} if the ongoing transition can be carried over to the
+     * current image, {@code false} otherwise.
+     */
+    private boolean isResolutionChange() {
+        return mCurrentTrans != null
+                && mCurrentTrans.getDestinyRect() != null
+                && !mTransDrawableRect.isEmpty()
+                && mDrawableRect != null && !mDrawableRect.isEmpty()
+                && MathUtils.haveSameAspectRatio(mDrawableRect, mTransDrawableRect);
     }
 
 
@@ -321,11 +1512,118 @@ public class KenBurnsView extends ImageView {
     }
 
 
+    /**
+     * Sets a listener to be notified in every frame of the animation. This lets
+     * dependent animations, like parallax text or progress bars, ride the
+     * Ken Burns frame loop instead of running loops of their own.
+     * @param progressListener the listener, or {@code null} to stop notifying.
+     */
+    public void setProgressListener(ProgressListener progressListener) {
+        mProgressListener = progressListener;
+    }
+
+
+    /**
+     * Sets a {@link FrameCache} to be played back instead of rendering every frame live.
+     * Until the cache is built, or if it fails to build, doesn't match the size of this
+     * view or this view is in timeline mode, the animation keeps being rendered live.
+     * The cache is dropped when the image is changed to another bitmap than its source.
+     * @param frameCache the frame cache, or {@code null} to go back to live rendering.
+     */
+    public void setFrameCache(FrameCache frameCache) {
+        mFrameCache = frameCache;
+        mCacheTime = 0;
+        mCacheIndex = -1;
+        mLastFrameTime = mClock.currentTimeMillis();
+        invalidate();
+    }
+
+
+    /**
+     * Sets a {@link FlightRecorder} to record frames and transitions into.
+     * @param flightRecorder the recorder, or {@code null} to stop recording.
+     */
+    public void setFlightRecorder(FlightRecorder flightRecorder) {
+        mFlightRecorder = flightRecorder;
+        mRecordedStopped = false;
+        recordPlaybackState();
+    }
+
+
+    /**
+     * Sets a {@link TransitionEventStream} to write animation events into. Unlike
+     * {@link TransitionListener}, its consumer runs off the UI thread.
+     * @param eventStream the event stream, or {@code null} to stop writing events.
+     */
+    public void setEventStream(TransitionEventStream eventStream) {
+        mEventStream = eventStream;
+    }
+
+
+    /**
+     * Stretches the time since the last frame by {@link #mDurationScale}. The fraction of
+     * a millisecond that's left over is carried to the next frame, so playback isn't
+     * slowed down more or less than asked for by rounding, whatever the frame rate.
+     * @param frameTime the time, in milliseconds, since the last frame.
+     * @return the playback time, in milliseconds, the frame advances by.
+     */
+    private long scaleFrameTime(long frameTime) {
+        if (mDurationScale == 1) {
+            return frameTime;
+        }
+        double scaled = frameTime / (double) mDurationScale + mFrameTimeRemainder;
+        long whole = (long) scaled;
+        mFrameTimeRemainder = scaled - whole;
+        return whole;
+    }
+
+
+    /**
+     * Applies a decision of an {@link AnimationGovernor} to this view. Transitions of
+     * a timeline anchored with {@link #setTimelineStartTime(long)} aren't stretched,
+     * since they must keep up with the shared schedule; only the frame rate is lowered.
+     * @param frameRate the target frame rate, in frames per second.
+     * @param durationScale the factor transition durations are stretched by.
+     * @param paused whether the animation should be paused.
+     */
+    void applyGovernorDecision(int frameRate, float durationScale, boolean paused) {
+        mFrameDelay = 1000 / frameRate;
+        if (mDurationScale != durationScale) {
+            mDurationScale = durationScale;
+            mFrameTimeRemainder = 0;
+        }
+        if (mGovernorPaused != paused) {
+            mGovernorPaused = paused;
+            // This will make the animation to continue from where it stopped.
+            mLastFrameTime = mClock.currentTimeMillis();
+            recordPlaybackState();
+            invalidate();
+        }
+    }
+
+
+    /**
+     * Sets the time source of the animation. This is useful to drive the animation
+     * with a simulated clock, e.g. in benchmarks, or with a clock shared by several devices.
+     * Of animated drawables, only {@link AnimationDrawable}s follow this clock. Other
+     * {@link Animatable}s, like {@link android.graphics.drawable.AnimatedVectorDrawable}s,
+     * keep their own schedule and time; only their redraws are deferred to the Ken Burns
+     * frames, so they're neither paused nor synced by this clock.
+     * @param clock the time source, or {@code null} to use {@link AnimationClock#SYSTEM}.
+     */
+    public void setAnimationClock(AnimationClock clock) {
+        mClock = clock != null ? clock : AnimationClock.SYSTEM;
+        mLastFrameTime = mClock.currentTimeMillis();
+    }
+
+
     /**
      * Pauses the Ken Burns Effect animation.
      */
     public void pause() {
         mPaused = true;
+        publishEvent(TransitionEventStream.EVENT_PAUSE);
+        recordPlaybackState();
     }
 
 
@@ -335,7 +1633,9 @@ public class KenBurnsView extends ImageView {
     public void resume() {
         mPaused = false;
         // This will make the animation to continue from where it stopped.
-        mLastFrameTime = System.currentTimeMillis();
+        mLastFrameTime = mClock.currentTimeMillis();
+        publishEvent(TransitionEventStream.EVENT_RESUME);
+        recordPlaybackState();
         invalidate();
     }
 
@@ -356,4 +1656,101 @@ public class KenBurnsView extends ImageView {
          */
         public void onTransitionEnd(Transition transition);
     }
+
+
+    /**
+     * A progress listener is notified in every frame of the animation, from the
+     * view's own frame loop. Only primitive values are passed, so nothing is
+     * allocated per frame.
+     */
+    public interface ProgressListener {
+        /**
+         * Notifies the progress of the ongoing transition in the current frame.
+         * @param progress the fraction of the transition duration that elapsed,
+         *                 from {@code 0} to {@code 1}.
+         * @param left the left coordinate of the rect of the drawable being shown.
+         * @param top the top coordinate of the rect of the drawable being shown.
+         * @param right the right coordinate of the rect of the drawable being shown.
+         * @param bottom the bottom coordinate of the rect of the drawable being shown.
+         * @param scale the scale the drawable is drawn at.
+         */
+        public void onTransitionProgress(float progress, float left, float top,
+                                         float right, float bottom, float scale);
+    }
+
+
+    /**
+     * The state of the animation saved across configuration changes: the ongoing
+     * transition and its progress, or the playback time of a timeline.
+     */
+    static class SavedState extends BaseSavedState {
+
+        /** Indicates whether the animation was paused. */
+        private boolean mPaused;
+
+        /** Indicates whether the view was in timeline mode. */
+        private boolean mHasTimeline;
+        /** The seed of the timeline. */
+        private long mTimelineSeed;
+        /** The playback time, in milliseconds, of the timeline. */
+        private long mPlaybackTime;
+
+        /** The rects of the ongoing transition, or {@code null} if there was none. */
+        private float[] mSrcRect;
+        private float[] mDstRect;
+        /** The drawable bounds the transition was generated for. */
+        private float[] mDrawableRect;
+        /** The duration, in milliseconds, of the transition. */
+        private long mDuration;
+        /** The time, in milliseconds, elapsed since the transition started. */
+        private long mElapsedTime;
+
+
+        SavedState(Parcelable superState) {
+            super(superState);
+        }
+
+
+        private SavedState(Parcel in) {
+            super(in);
+            mPaused = in.readInt() != 0;
+            mHasTimeline = in.readInt() != 0;
+            mTimelineSeed = in.readLong();
+            mPlaybackTime = in.readLong();
+            mSrcRect = in.createFloatArray();
+            mDstRect = in.createFloatArray();
+            mDrawableRect = in.createFloatArray();
+            mDuration = in.readLong();
+            mElapsedTime = in.readLong();
+        }
+
+
+        @Override
+        public void writeToParcel(Parcel out, int flags) {
+            super.writeToParcel(out, flags);
+            out.writeInt(mPaused ? 1 : 0);
+            out.writeInt(mHasTimeline ? 1 : 0);
+            out.writeLong(mTimelineSeed);
+            out.writeLong(mPlaybackTime);
+            out.writeFloatArray(mSrcRect);
+            out.writeFloatArray(mDstRect);
+            out.writeFloatArray(mDrawableRect);
+            out.writeLong(mDuration);
+            out.writeLong(mElapsedTime);
+        }
+
+
+        public static final Parcelable.Creator<SavedState> CREATOR =
+                new Parcelable.Creator<SavedState>() {
+            @Override
+            public SavedState createFromParcel(Parcel in) {
+                return new SavedState(in);
+            }
+
+            @Override
+            public SavedState[] newArray(int size) {
+                return new SavedState[size];
+            }
+        };
+    }
 }
@@ -15,6 +15,7 @@
  */
 package com.flaviofaria.kenburnsview;
 
+import android.graphics.Matrix;
 import android.graphics.RectF;
 
 /**
@@ -60,4 +61,78 @@ public final class MathUtils {
     protected static float getRectRatio(RectF rect) {
         return rect.width() / rect.height();
     }
+
+
+    /**
+     * Maps a rect expressed in the coordinate space of {@code fromBounds} into the
+     * coordinate space of {@code toBounds}. This is useful to carry a transition over
+     * to a different resolution of the same image.
+     * @param rect the rect to be mapped.
+     * @param fromBounds the bounds {@code rect} is currently relative to.
+     * @param toBounds the bounds {@code rect} will be relative to.
+     * @param out the rect that will hold the result. It may be {@code rect} itself.
+     * @return {@code out}, for convenience.
+     */
+    protected static RectF mapRect(RectF rect, RectF fromBounds, RectF toBounds, RectF out) {
+        float scaleX = toBounds.width() / fromBounds.width();
+        float scaleY = toBounds.height() / fromBounds.height();
+        out.set(rect.left * scaleX, rect.top * scaleY,
+                rect.right * scaleX, rect.bottom * scaleY);
+        return out;
+    }
+
+
+    /**
+     * Sets up a matrix that fits the content of {@code currentRect}
+     * into the entire {@code viewportRect}.
+     * @param matrix the matrix to be set up.
+     * @param drawableRect the bounds of the drawable being animated.
+     * @param viewportRect the bounds of the viewport the drawable is drawn in.
+     * @param currentRect the rect of the drawable to be shown in the current frame.
+     * @return the scale the drawable is drawn at.
+     */
+    protected static float setTransitionMatrix(Matrix matrix, RectF drawableRect,
+                                               RectF viewportRect, RectF currentRect) {
+        float widthScale = drawableRect.width() / currentRect.width();
+        float heightScale = drawableRect.height() / currentRect.height();
+        // Scale to make the current rect match the smallest drawable dimension.
+        float currRectToDrwScale = Math.min(widthScale, heightScale);
+        // Scale to make the current rect match the viewport bounds.
+        float vpWidthScale = viewportRect.width() / currentRect.width();
+        float vpHeightScale = viewportRect.height() / currentRect.height();
+        float currRectToVpScale = Math.min(vpWidthScale, vpHeightScale);
+        // Combines the two scales to fill the viewport with the current rect.
+        float totalScale = currRectToDrwScale * currRectToVpScale;
+
+        float translX = totalScale * (drawableRect.centerX() - currentRect.left);
+        float translY = totalScale * (drawableRect.centerY() - currentRect.top);
+
+        matrix.reset();
+        matrix.postTranslate(-drawableRect.width() / 2, -drawableRect.height() / 2);
+        matrix.postScale(totalScale, totalScale);
+        matrix.postTranslate(translX, translY);
+        return totalScale;
+    }
+
+
+    /**
+     * Reshapes a rect to a given aspect ratio, keeping its center and area as far
+     * as {@code bounds} allow. It's shrunk and shifted to fit within {@code bounds}.
+     * @param rect the rect to be reshaped.
+     * @param ratio the aspect ratio, i.e. width divided by height.
+     * @param bounds the bounds the reshaped rect has to fit within.
+     * @return a new rect with the given aspect ratio.
+     */
+    protected static RectF fitToAspectRatio(RectF rect, float ratio, RectF bounds) {
+        float height = (float) Math.sqrt(rect.width() * rect.height() / ratio);
+        float width = height * ratio;
+        float fit = Math.min(1, Math.min(bounds.width() / width, bounds.height() / height));
+        width *= fit;
+        height *= fit;
+        float left = Math.max(bounds.left,
+                Math.min(rect.centerX() - width / 2, bounds.right - width));
+        float top = Math.max(bounds.top,
+                Math.min(rect.centerY() - height / 2, bounds.bottom - height));
+        return new RectF(left, top, left + width, top + height);
+    }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.Canvas;
+import android.view.View;
+
+/**
+ * A layer drawn by {@link KenBurnsView} on top of its image, in the same pass, like a
+ * scrim, a vignette or a caption background. This avoids stacking extra views, and the
+ * overdraw that comes with them, on top of the image.
+ * <p>
+ * Everything a layer needs to draw, like shaders and paths, is built in
+ * {@link #onBuild(int, int)}, which is only called again when the size of the view
+ * changes or the layer calls {@link #invalidateLayer()} because its inputs changed.
+ * {@link #onDraw(Canvas)} must only draw what was already built.
+ * <p>
+ * A layer can be added to one view at a time.
+ */
+public abstract class OverlayLayer {
+
+    /** The width the layer was last built for. */
+    private int mWidth;
+    /** The height the layer was last built for. */
+    private int mHeight;
+
+    /** Indicates whether the inputs of the layer changed since it was last built. */
+    private boolean mDirty = true;
+
+    /** The view the layer is drawn by, or {@code null} if it wasn't added to any. */
+    private View mHost;
+
+
+    /**
+     * Sets the view this layer is drawn by, to be redrawn when the layer changes.
+     * @param host the view, or {@code null} if the layer was removed from it.
+     */
+    final void setHost(View host) {
+        mHost = host;
+    }
+
+
+    /**
+     * Draws this layer, building it first if it's not up to date.
+     * @param canvas the canvas of the view.
+     * @param width the width of the view.
+     * @param height the height of the view.
+     */
+    final void draw(Canvas canvas, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (mDirty || width != mWidth || height != mHeight) {
+            mWidth = width;
+            mHeight = height;
+            mDirty = false;
+            onBuild(width, height);
+        }
+        onDraw(canvas);
+    }
+
+
+    /**
+     * Marks this layer to be built again, and its view to be drawn again. Must be called
+     * on the UI thread every time an input of the layer changes, so the change shows up
+     * even while the animation is paused.
+     */
+    protected void invalidateLayer() {
+        mDirty = true;
+        if (mHost != null) {
+            mHost.invalidate();
+        }
+    }
+
+
+    /**
+     * Builds the shaders, paths and any other objects needed to draw this layer.
+     * @param width the width of the view.
+     * @param height the height of the view.
+     */
+    protected abstract void onBuild(int width, int height);
+
+
+    /**
+     * Draws this layer with the objects created by {@link #onBuild(int, int)}.
+     * @param canvas the canvas of the view.
+     */
+    protected abstract void onDraw(Canvas canvas);
+
+}
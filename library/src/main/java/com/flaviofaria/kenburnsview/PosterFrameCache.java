@@ -0,0 +1,289 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Renders poster frames, i.e. the frame a {@link KenBurnsView} in timeline mode shows at
+ * a given playback time, so views that are not animating yet, like list cells, can show
+ * the same crop the animation starts from. Frames are rendered off the UI thread and kept
+ * in a least recently used cache bounded by their size in bytes, keyed by image,
+ * drawable size, viewport size, timeline seed and playback time.
+ * <p>
+ * The generator picks crops in pixels of the drawable bounds, so crops only match when
+ * they're picked in the exact same bounds. Frames are therefore requested with the
+ * intrinsic size of the drawable the view shows, which may differ from the size of the
+ * bitmap they're rendered from, e.g. a thumbnail, as long as both have the same
+ * proportions. The view's {@link TransitionTimeline} must have the same seed and a
+ * generator configured as the one of this cache.
+ * <p>
+ * Frames only match views in timeline mode. A view without a timeline seeds its
+ * transitions from the current time, so the frame it starts from can't be rendered ahead.
+ * <p>
+ * Call {@link #release()} when the cache is no longer needed to stop its thread.
+ * @see KenBurnsView#setTransitionTimeline(TransitionTimeline)
+ */
+public class PosterFrameCache {
+
+    /** The generator transitions are taken from. Only used on {@link #mExecutor}. */
+    private final RandomTransitionGenerator mTransGen;
+
+    /** The cached frames by key. */
+    private final BitmapLruCache mFrames;
+
+    /** The listeners waiting for frames that are being rendered, by key. */
+    private final Map<String, List<PosterFrameListener>> mPending =
+            new HashMap<String, List<PosterFrameListener>>();
+
+    /** The thread frames are rendered on, one at a time. */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /** Posts results to the UI thread. */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** Whether {@link #release()} was called. */
+    private boolean mReleased;
+
+
+    /**
+     * Creates a poster frame cache.
+     * @param transGen the generator transitions are taken from. It must be configured
+     *                 as the ones of the views the frames are shown in, but not shared
+     *                 with them, since it's used off the UI thread.
+     * @param maxBytes the maximum size, in bytes, of the cached frames.
+     */
+    public PosterFrameCache(RandomTransitionGenerator transGen, long maxBytes) {
+        mTransGen = transGen;
+        mFrames = new BitmapLruCache(maxBytes);
+    }
+
+
+    /**
+     * Gets a frame that is already cached. Meant for binding list cells without waiting.
+     * @param imageKey a key that identifies the image, e.g. its URL.
+     * @param drawableWidth the intrinsic width of the drawable the view shows.
+     * @param drawableHeight the intrinsic height of the drawable the view shows.
+     * @param width the width of the viewport.
+     * @param height the height of the viewport.
+     * @param seed the seed of the timeline.
+     * @param time the playback time, in milliseconds.
+     * @return the frame, or {@code null} if it isn't cached.
+     */
+    public Bitmap get(String imageKey, int drawableWidth, int drawableHeight,
+                      int width, int height, long seed, long time) {
+        return mFrames.get(getKey(imageKey, drawableWidth, drawableHeight,
+                width, height, seed, time));
+    }
+
+
+    /**
+     * Gets a frame, rendering it in the background if it isn't cached.
+     * @param imageKey a key that identifies the image, e.g. its URL.
+     * @param image the image the frame is rendered from. It must have the proportions of
+     *              the drawable, but may be smaller.
+     * @param drawableWidth the intrinsic width of the drawable the view shows.
+     * @param drawableHeight the intrinsic height of the drawable the view shows.
+     * @param width the width of the viewport.
+     * @param height the height of the viewport.
+     * @param seed the seed of the timeline.
+     * @param time the playback time, in milliseconds.
+     * @param listener notified on the UI thread when the frame is ready. It's called
+     *                 right away if the frame is cached or the cache was released.
+     *                 May be {@code null} to only prefetch the frame into the cache.
+     * @throws IllegalArgumentException if the image doesn't have the proportions of
+     *                                  the drawable.
+     */
+    public void render(final String imageKey, final Bitmap image,
+                       final int drawableWidth, final int drawableHeight,
+                       final int width, final int height, final long seed, final long time,
+                       PosterFrameListener listener) {
+        // Tolerates the rounding of an image scaled down from the drawable.
+        if (Math.abs((float) image.getWidth() * drawableHeight / drawableWidth
+                - image.getHeight()) > 1) {
+            throw new IllegalArgumentException("The image must have the proportions of the "
+                    + "drawable: " + image.getWidth() + "x" + image.getHeight() + " vs. "
+                    + drawableWidth + "x" + drawableHeight);
+        }
+
+        final String key = getKey(imageKey, drawableWidth, drawableHeight,
+                width, height, seed, time);
+        Bitmap frame = mFrames.get(key);
+        boolean released;
+        synchronized (this) {
+            released = mReleased;
+            if (frame == null && !released) {
+                List<PosterFrameListener> listeners = mPending.get(key);
+                if (listeners != null) { // Already being rendered.
+                    if (listener != null) {
+                        listeners.add(listener);
+                    }
+                    return;
+                }
+                listeners = new ArrayList<PosterFrameListener>();
+                if (listener != null) {
+                    listeners.add(listener);
+                }
+                mPending.put(key, listeners);
+            }
+        }
+        if (frame != null) {
+            if (listener != null) {
+                listener.onPosterFrameReady(imageKey, frame);
+            }
+            return;
+        }
+        if (released) {
+            if (listener != null) {
+                listener.onPosterFrameFailed(imageKey);
+            }
+            return;
+        }
+
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                Bitmap rendered;
+                try {
+                    rendered = renderFrame(image, drawableWidth, drawableHeight,
+                            width, height, seed, time);
+                } catch (OutOfMemoryError e) {
+                    rendered = null;
+                }
+                final Bitmap result = rendered;
+                final List<PosterFrameListener> listeners;
+                synchronized (PosterFrameCache.this) {
+                    listeners = mPending.remove(key);
+                    if (listeners == null) { // Released while rendering.
+                        return;
+                    }
+                    if (result != null) {
+                        mFrames.put(key, result);
+                    }
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (PosterFrameListener listener : listeners) {
+                            if (result != null) {
+                                listener.onPosterFrameReady(imageKey, result);
+                            } else {
+                                listener.onPosterFrameFailed(imageKey);
+                            }
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+
+    /**
+     * Renders the frame a view shows at a given playback time of a timeline.
+     * @param image the image the frame is rendered from.
+     * @param drawableWidth the intrinsic width of the drawable the view shows.
+     * @param drawableHeight the intrinsic height of the drawable the view shows.
+     * @param width the width of the viewport.
+     * @param height the height of the viewport.
+     * @param seed the seed of the timeline.
+     * @param time the playback time, in milliseconds.
+     * @return the frame.
+     */
+    private Bitmap renderFrame(Bitmap image, int drawableWidth, int drawableHeight,
+                               int width, int height, long seed, long time) {
+        RectF drawableRect = new RectF(0, 0, drawableWidth, drawableHeight);
+        RectF viewportRect = new RectF(0, 0, width, height);
+        TransitionTimeline timeline = new TransitionTimeline(mTransGen, seed);
+        timeline.setBounds(drawableRect, viewportRect);
+        long index = timeline.getTransitionIndex(time);
+        RectF rect = timeline.getTransition(index)
+                .getInterpolatedRect(Math.max(time, 0) - timeline.getStartTime(index));
+
+        Matrix matrix = new Matrix();
+        MathUtils.setTransitionMatrix(matrix, drawableRect, viewportRect, rect);
+        // Maps the pixels of the image to the drawable bounds the crop was picked in.
+        matrix.preScale((float) drawableWidth / image.getWidth(),
+                (float) drawableHeight / image.getHeight());
+        Bitmap frame = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        new Canvas(frame).drawBitmap(image, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return frame;
+    }
+
+
+    /**
+     * Removes all frames from the cache.
+     */
+    public void evictAll() {
+        mFrames.evictAll();
+    }
+
+
+    /**
+     * Stops the rendering thread and empties the cache. Frames being rendered are
+     * dropped without notifying their listeners, and later requests fail right away.
+     */
+    public void release() {
+        synchronized (this) {
+            mReleased = true;
+            mPending.clear();
+        }
+        mExecutor.shutdownNow();
+        mFrames.evictAll();
+    }
+
+
+    /**
+     * Builds the cache key of a frame.
+     * @return the key.
+     */
+    private static String getKey(String imageKey, int drawableWidth, int drawableHeight,
+                                 int width, int height, long seed, long time) {
+        return imageKey + '|' + drawableWidth + 'x' + drawableHeight + '|'
+                + width + 'x' + height + '|' + seed + '|' + time;
+    }
+
+
+    /**
+     * A poster frame listener is notified on the UI thread when a frame is rendered.
+     */
+    public interface PosterFrameListener {
+        /**
+         * Notifies that a frame is ready.
+         * @param imageKey the key of the image the frame was rendered from.
+         * @param frame the frame.
+         */
+        public void onPosterFrameReady(String imageKey, Bitmap frame);
+
+        /**
+         * Notifies that a frame couldn't be allocated, or the cache was released.
+         * @param imageKey the key of the image the frame was to be rendered from.
+         */
+        public void onPosterFrameFailed(String imageKey);
+    }
+}
@@ -0,0 +1,376 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads an image from an {@link InputStream} into a {@link KenBurnsView}, decoding it
+ * incrementally on a background thread. For progressive JPEGs, coarse passes are shown
+ * at a reduced resolution as soon as they arrive, while the transition keeps running,
+ * and replaced by the full image when the stream ends. Since every pass has the same
+ * aspect ratio, later passes are set as {@link KenBurnsView#setImageUpgrade(Bitmap)
+ * upgrades} and don't restart the ongoing transition. Every pass, including the full
+ * image, is decoded at the sample size that keeps it at least as large as the view.
+ */
+public class ProgressiveImageLoader {
+
+    /** Size, in bytes, of each read from the stream. */
+    private static final int READ_SIZE = 8 * 1024;
+
+    /** Amount of bytes that must arrive before the first coarse pass is decoded. */
+    private static final int FIRST_PASS_SIZE = 16 * 1024;
+
+    /** The view the decoded passes are shown in. */
+    private final KenBurnsView mView;
+
+    /** Handler used to publish decoded passes on the UI thread. */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** A {@link LoadingListener} to be notified of the loading progress. */
+    private LoadingListener mLoadingListener;
+
+    /** The ongoing load, if any. */
+    private LoadTask mTask;
+
+
+    public ProgressiveImageLoader(KenBurnsView view) {
+        mView = view;
+    }
+
+
+    /**
+     * Starts loading an image, cancelling any ongoing load. The stream is read and
+     * closed on a background thread.
+     * @param in the stream the encoded image is read from.
+     */
+    public void load(InputStream in) {
+        cancel();
+        mTask = new LoadTask(in, mView.getWidth(), mView.getHeight());
+        new Thread(mTask, "ProgressiveImageLoader").start();
+    }
+
+
+    /**
+     * Cancels the ongoing load. Passes that weren't published yet are discarded.
+     */
+    public void cancel() {
+        if (mTask != null) {
+            mTask.mCancelled = true;
+            mTask = null;
+        }
+    }
+
+
+    public void setLoadingListener(LoadingListener loadingListener) {
+        mLoadingListener = loadingListener;
+    }
+
+
+    /**
+     * Shows a decoded pass, unless its load was cancelled meanwhile.
+     * Must be called on the UI thread.
+     * @param task the load the pass comes from.
+     * @param bitmap the decoded pass.
+     * @param finalPass whether this is the full image.
+     */
+    private void publishPass(LoadTask task, Bitmap bitmap, boolean finalPass) {
+        if (task != mTask) {
+            return;
+        }
+        if (finalPass) {
+            mTask = null;
+        }
+        if (task.mShown) {
+            mView.setImageUpgrade(bitmap);
+        } else {
+            mView.setImageBitmap(bitmap);
+            task.mShown = true;
+        }
+        if (mLoadingListener != null) {
+            mLoadingListener.onPassLoaded(bitmap, finalPass);
+        }
+    }
+
+
+    /**
+     * Reports a failed load, unless it was cancelled meanwhile.
+     * Must be called on the UI thread.
+     * @param task the load that failed.
+     * @param e the reason of the failure.
+     */
+    private void publishFailure(LoadTask task, IOException e) {
+        if (task != mTask) {
+            return;
+        }
+        mTask = null;
+        if (mLoadingListener != null) {
+            mLoadingListener.onLoadingFailed(e);
+        }
+    }
+
+
+    /**
+     * Checks whether some JPEG data is progressively encoded, by walking its segments
+     * up to the start of frame marker.
+     * @param data the JPEG data received so far.
+     * @param length the amount of valid bytes in {@code data}.
+     * @return {@code true} if the data is a progressive JPEG, {@code false} if it isn't
+     * or if not enough data arrived to tell.
+     */
+    private static boolean isProgressiveJpeg(byte[] data, int length) {
+        if (length < 2 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != 0xD8) {
+            return false; // Not a JPEG.
+        }
+        int i = 2;
+        while (i + 4 <= length && (data[i] & 0xFF) == 0xFF) {
+            int marker = data[i + 1] & 0xFF;
+            boolean startOfFrame = marker >= 0xC0 && marker <= 0xCF
+                    && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+            if (startOfFrame) {
+                return marker == 0xC2 || marker == 0xC6 || marker == 0xCA || marker == 0xCE;
+            }
+            i += 2 + (((data[i + 2] & 0xFF) << 8) | (data[i + 3] & 0xFF));
+        }
+        return false;
+    }
+
+
+    /**
+     * Computes the largest power of two sample size that keeps an image
+     * at least as large as the viewport.
+     * @param width the width of the image.
+     * @param height the height of the image.
+     * @param viewportWidth the width of the viewport.
+     * @param viewportHeight the height of the viewport.
+     * @return the sample size to decode the image with.
+     */
+    private static int computeSampleSize(int width, int height,
+                                         int viewportWidth, int viewportHeight) {
+        int sampleSize = 1;
+        if (viewportWidth > 0 && viewportHeight > 0) {
+            while (width / (sampleSize * 2) >= viewportWidth
+                    && height / (sampleSize * 2) >= viewportHeight) {
+                sampleSize *= 2;
+            }
+        }
+        return sampleSize;
+    }
+
+
+    /**
+     * Reads and decodes a single image on a background thread.
+     */
+    private class LoadTask implements Runnable {
+
+        /** The stream the encoded image is read from. */
+        private final InputStream mIn;
+
+        /** The viewport size when the load started. */
+        private final int mViewportWidth;
+        private final int mViewportHeight;
+
+        /** Set from the UI thread to stop this load. */
+        private volatile boolean mCancelled;
+
+        /** The encoded data received so far. */
+        private byte[] mData = new byte[FIRST_PASS_SIZE * 2];
+        /** The amount of valid bytes in {@link #mData}. */
+        private int mLength;
+
+        /** The sample size passes are decoded with, or {@code 0} if not known yet. */
+        private int mSampleSize;
+
+        /** Whether a pass of this load was shown. Only used on the UI thread. */
+        private boolean mShown;
+
+
+        private LoadTask(InputStream in, int viewportWidth, int viewportHeight) {
+            mIn = in;
+            mViewportWidth = viewportWidth;
+            mViewportHeight = viewportHeight;
+        }
+
+
+        @Override
+        public void run() {
+            try {
+                readAndDecodePasses();
+                if (mCancelled) {
+                    return;
+                }
+                if (mSampleSize == 0) {
+                    mSampleSize = decodeSampleSize();
+                }
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = mSampleSize;
+                Bitmap bitmap = BitmapFactory.decodeByteArray(mData, 0, mLength, options);
+                if (bitmap == null) {
+                    throw new IOException("Unable to decode image");
+                }
+                post(bitmap, true);
+            } catch (IOException e) {
+                postFailure(e);
+            } catch (OutOfMemoryError e) {
+                postFailure(wrap("Not enough memory to decode image", e));
+            } catch (RuntimeException e) {
+                postFailure(wrap("Unable to decode image", e));
+            } finally {
+                try {
+                    mIn.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+
+        /**
+         * Reads the whole stream, decoding and posting a coarse pass every time the
+         * amount of data received doubles. Doubling bounds the total decoding work
+         * to about twice the one of decoding the full image once.
+         * @throws IOException if the stream can't be read.
+         */
+        private void readAndDecodePasses() throws IOException {
+            int nextPassSize = FIRST_PASS_SIZE;
+            boolean progressive = false;
+            int read;
+            while (!mCancelled && (read = mIn.read(ensureCapacity(), mLength, READ_SIZE)) != -1) {
+                mLength += read;
+                if (mLength < nextPassSize) {
+                    continue;
+                }
+                nextPassSize = mLength * 2;
+                if (!progressive) {
+                    progressive = isProgressiveJpeg(mData, mLength);
+                    if (!progressive) {
+                        continue; // Partial passes of other formats are mostly blank.
+                    }
+                }
+                if (mSampleSize == 0) {
+                    mSampleSize = decodeSampleSize();
+                    if (mSampleSize == 0) {
+                        continue;
+                    }
+                }
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inSampleSize = mSampleSize;
+                Bitmap pass = BitmapFactory.decodeByteArray(mData, 0, mLength, options);
+                if (pass != null) {
+                    post(pass, false);
+                }
+            }
+        }
+
+
+        /**
+         * Decodes the size of the image from the data received so far to compute the
+         * sample size it's decoded with.
+         * @return the sample size, or {@code 0} if the size isn't known yet.
+         */
+        private int decodeSampleSize() {
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(mData, 0, mLength, bounds);
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+                return 0;
+            }
+            return computeSampleSize(bounds.outWidth, bounds.outHeight,
+                    mViewportWidth, mViewportHeight);
+        }
+
+
+        /**
+         * Makes sure {@link #mData} can hold another read from the stream.
+         * @return {@link #mData}.
+         */
+        private byte[] ensureCapacity() {
+            if (mLength + READ_SIZE > mData.length) {
+                byte[] data = new byte[Math.max(mData.length * 2, mLength + READ_SIZE)];
+                System.arraycopy(mData, 0, data, 0, mLength);
+                mData = data;
+            }
+            return mData;
+        }
+
+
+        /**
+         * Posts a failure to be reported on the UI thread.
+         * @param e the reason of the failure.
+         */
+        private void postFailure(final IOException e) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    publishFailure(LoadTask.this, e);
+                }
+            });
+        }
+
+
+        /**
+         * Posts a decoded pass to be shown on the UI thread.
+         * @param bitmap the decoded pass.
+         * @param finalPass whether this is the full image.
+         */
+        private void post(final Bitmap bitmap, final boolean finalPass) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    publishPass(LoadTask.this, bitmap, finalPass);
+                }
+            });
+        }
+    }
+
+
+    /**
+     * Wraps an error thrown while decoding into the exception loading listeners get.
+     * @param message the description of the failure.
+     * @param cause the error.
+     * @return the exception.
+     */
+    private static IOException wrap(String message, Throwable cause) {
+        IOException e = new IOException(message);
+        e.initCause(cause);
+        return e;
+    }
+
+
+    /**
+     * A loading listener receives notifications as an image is loaded.
+     */
+    public interface LoadingListener {
+        /**
+         * Notifies that a pass of the image was decoded and shown.
+         * @param bitmap the decoded pass.
+         * @param finalPass {@code true} if this is the full image,
+         *                  {@code false} if it's a coarse pass.
+         */
+        public void onPassLoaded(Bitmap bitmap, boolean finalPass);
+
+        /**
+         * Notifies that the image couldn't be loaded.
+         * @param e the reason of the failure.
+         */
+        public void onLoadingFailed(IOException e);
+    }
+}
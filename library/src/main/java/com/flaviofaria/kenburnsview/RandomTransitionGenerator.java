@@ -16,6 +16,7 @@
 package com.flaviofaria.kenburnsview;
 
 import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
 import android.view.animation.AccelerateDecelerateInterpolator;
 import android.view.animation.Interpolator;
 
@@ -27,7 +28,7 @@ public class RandomTransitionGenerator implements TransitionGenerator {
     public static final int DEFAULT_TRANSITION_DURATION = 10000;
 
     /** Minimum rect dimension factor, according to the maximum one. */
-    private static final float MIN_RECT_FACTOR = 0.75f;
+    protected static final float MIN_RECT_FACTOR = 0.75f;
 
     /** Random object used to generate arbitrary rects. */
     private final Random mRandom = new Random(System.currentTimeMillis());
@@ -44,6 +45,12 @@ public class RandomTransitionGenerator implements TransitionGenerator {
     /** The bounds of the drawable when the last transition was generated. */
     private RectF mLastDrawableBounds;
 
+    /**
+     * Indicates whether the drawable is the image of the last transition at another
+     * resolution, so the last destiny rect can be carried over to its bounds.
+     */
+    private boolean mImageUpgraded;
+
 
     public RandomTransitionGenerator() {
         this(DEFAULT_TRANSITION_DURATION, new AccelerateDecelerateInterpolator());
@@ -68,6 +75,16 @@ public class RandomTransitionGenerator implements TransitionGenerator {
         if (!firstTransition) {
             dstRect = mLastGenTrans.getDestinyRect();
             drawableBoundsChanged = !drawableBounds.equals(mLastDrawableBounds);
+            if (drawableBoundsChanged && mImageUpgraded
+                    && MathUtils.haveSameAspectRatio(drawableBounds, mLastDrawableBounds)) {
+                /* Same image at a different resolution (e.g. a placeholder replaced
+                   by the full image). Carries the last destiny rect over instead of
+                   starting from an arbitrary one. Other images with the same
+                   proportions start afresh. */
+                dstRect = MathUtils.mapRect(dstRect, mLastDrawableBounds, drawableBounds,
+                        new RectF());
+                drawableBoundsChanged = false;
+            }
             viewportRatioChanged = !MathUtils.haveSameAspectRatio(dstRect, viewport);
         }
 
@@ -85,11 +102,25 @@ public class RandomTransitionGenerator implements TransitionGenerator {
                 mTransitionInterpolator);
 
         mLastDrawableBounds = new RectF(drawableBounds);
+        mImageUpgraded = false;
 
         return mLastGenTrans;
     }
 
 
+    /**
+     * Notifies that the view this generator animates shows another image. Only for
+     * upgrades is the last transition carried over to the new drawable bounds.
+     * Subclasses must call through to this method.
+     * @param image the drawable now shown, or {@code null} if there's none.
+     * @param upgrade whether it's another resolution of the previous image,
+     *                set through {@link KenBurnsView#setImageUpgrade(Drawable)}.
+     */
+    protected void onImageChanged(Drawable image, boolean upgrade) {
+        mImageUpgraded = upgrade;
+    }
+
+
     /**
      * Generates a random rect that can be fully contained within {@code drawableBounds} and
      * has the same aspect ratio of {@code viewportRect}. The dimensions of this random rect
@@ -101,31 +132,79 @@ public class RandomTransitionGenerator implements TransitionGenerator {
      * @return an arbitrary generated rect with the same aspect ratio of {@code viewportRect}
      * that will be contained within {@code drawableBounds}.
      */
-    private RectF generateRandomRect(RectF drawableBounds, RectF viewportRect) {
+    protected RectF generateRandomRect(RectF drawableBounds, RectF viewportRect) {
+        RectF maxCrop = getMaxCrop(drawableBounds, viewportRect);
+
+        float randomFloat = MathUtils.truncate(mRandom.nextFloat(), 2);
+        float factor = MIN_RECT_FACTOR + ((1 - MIN_RECT_FACTOR) * randomFloat);
+
+        float width = factor * maxCrop.width();
+        float height = factor * maxCrop.height();
+        int widthDiff = (int) (drawableBounds.width() - width);
+        int heightDiff = (int) (drawableBounds.height() - height);
+        int left = widthDiff > 0 ? mRandom.nextInt(widthDiff) : 0;
+        int top = heightDiff > 0 ? mRandom.nextInt(heightDiff) : 0;
+        return new RectF(left, top, left + width, top + height);
+    }
+
+
+    /**
+     * Computes the largest rect with the same aspect ratio of {@code viewportRect}
+     * that {@code drawableBounds} can contain.
+     * @param drawableBounds the bounds of the drawable that will be zoomed and panned.
+     * @param viewportRect the bounds of the view that the drawable will be shown.
+     * @return the largest crop, placed at the origin.
+     */
+    protected static RectF getMaxCrop(RectF drawableBounds, RectF viewportRect) {
         float drawableRatio = MathUtils.getRectRatio(drawableBounds);
         float viewportRectRatio = MathUtils.getRectRatio(viewportRect);
-        RectF maxCrop;
 
         if (drawableRatio > viewportRectRatio) {
             float r = (drawableBounds.height() / viewportRect.height()) * viewportRect.width();
             float b = drawableBounds.height();
-            maxCrop = new RectF(0, 0, r, b);
+            return new RectF(0, 0, r, b);
         } else {
             float r = drawableBounds.width();
             float b = (drawableBounds.width() / viewportRect.width()) * viewportRect.height();
-            maxCrop = new RectF(0, 0, r, b);
+            return new RectF(0, 0, r, b);
         }
+    }
 
-        float randomFloat = MathUtils.truncate(mRandom.nextFloat(), 2);
-        float factor = MIN_RECT_FACTOR + ((1 - MIN_RECT_FACTOR) * randomFloat);
 
-        float width = factor * maxCrop.width();
-        float height = factor * maxCrop.height();
-        int widthDiff = (int) (drawableBounds.width() - width);
-        int heightDiff = (int) (drawableBounds.height() - height);
-        int left = widthDiff > 0 ? mRandom.nextInt(widthDiff) : 0;
-        int top = heightDiff > 0 ? mRandom.nextInt(heightDiff) : 0;
-        return new RectF(left, top, left + width, top + height);
+    /**
+     * Gets the {@link Random} object used to generate arbitrary rects. Subclasses must
+     * use it for any randomness, so sequences stay deterministic for a given seed.
+     * @return the {@link Random} object of this generator.
+     */
+    protected Random getRandom() {
+        return mRandom;
+    }
+
+
+    /**
+     * Reseeds the random rect generation and forgets the last generated transition,
+     * so the same sequence of transitions is generated again for the same bounds.
+     * @param seed the seed of the transition sequence.
+     */
+    public void setSeed(long seed) {
+        mRandom.setSeed(seed);
+        mLastGenTrans = null;
+        mLastDrawableBounds = null;
+        mImageUpgraded = false;
+    }
+
+
+    /**
+     * Makes a transition the last generated one, so the next transition starts where it
+     * ends. Used to carry a transition restored from a saved state on.
+     * @param transition the transition.
+     * @param drawableBounds the bounds of the drawable the transition was generated for.
+     */
+    void setLastTransition(Transition transition, RectF drawableBounds) {
+        mLastGenTrans = transition;
+        mLastDrawableBounds = new RectF(drawableBounds);
+        // The view only restores it for the same image, maybe at another resolution.
+        mImageUpgraded = true;
     }
 
 
@@ -138,6 +217,15 @@ public class RandomTransitionGenerator implements TransitionGenerator {
     }
 
 
+    /**
+     * Gets the duration, in milliseconds, of the transitions generated.
+     * @return the duration.
+     */
+    public long getTransitionDuration() {
+        return mTransitionDuration;
+    }
+
+
     /**
      * Sets the {@link Interpolator} for each transition generated.
      * @param interpolator the transition interpolator.
@@ -145,4 +233,13 @@ public class RandomTransitionGenerator implements TransitionGenerator {
     public void setTransitionInterpolator(Interpolator interpolator) {
         mTransitionInterpolator = interpolator;
     }
+
+
+    /**
+     * Gets the {@link Interpolator} of the transitions generated.
+     * @return the interpolator.
+     */
+    public Interpolator getTransitionInterpolator() {
+        return mTransitionInterpolator;
+    }
 }
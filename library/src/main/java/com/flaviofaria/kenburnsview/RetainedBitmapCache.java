@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.Bitmap;
+
+/**
+ * A process-level cache of decoded bitmaps keyed by their source, e.g. a resource or
+ * a URI. It outlives activities, so a {@link KenBurnsView} recreated on a configuration
+ * change gets its image back without decoding it again. The least recently used
+ * bitmaps are evicted when the cache exceeds its size in bytes.
+ * @see KenBurnsView#setBitmapCache(RetainedBitmapCache)
+ */
+public class RetainedBitmapCache {
+
+    /** Fraction of the maximum heap size taken by the default cache. */
+    private static final int DEFAULT_HEAP_FRACTION = 8;
+
+    /** The cache shared across the process, created when first requested. */
+    private static RetainedBitmapCache sDefault;
+
+    /** The cached bitmaps by source. */
+    private final BitmapLruCache mBitmaps;
+
+
+    /**
+     * Creates a bitmap cache.
+     * @param maxBytes the maximum size, in bytes, of the cached bitmaps.
+     */
+    public RetainedBitmapCache(long maxBytes) {
+        mBitmaps = new BitmapLruCache(maxBytes);
+    }
+
+
+    /**
+     * Gets the cache shared across the process. It takes up to an eighth of the heap.
+     * @return the default cache.
+     */
+    public static synchronized RetainedBitmapCache getDefault() {
+        if (sDefault == null) {
+            sDefault = new RetainedBitmapCache(
+                    Runtime.getRuntime().maxMemory() / DEFAULT_HEAP_FRACTION);
+        }
+        return sDefault;
+    }
+
+
+    /**
+     * Gets a cached bitmap.
+     * @param source the key of the bitmap source, e.g. a URI.
+     * @return the bitmap, or {@code null} if it isn't cached.
+     */
+    public Bitmap get(String source) {
+        return mBitmaps.get(source);
+    }
+
+
+    /**
+     * Adds a bitmap to the cache, evicting the least recently used ones to stay
+     * within the cache size.
+     * @param source the key of the bitmap source, e.g. a URI.
+     * @param bitmap the decoded bitmap.
+     */
+    public void put(String source, Bitmap bitmap) {
+        mBitmaps.put(source, bitmap);
+    }
+
+
+    /**
+     * Removes a bitmap from the cache.
+     * @param source the key of the bitmap source.
+     */
+    public void remove(String source) {
+        mBitmaps.remove(source);
+    }
+
+
+    /**
+     * Removes all bitmaps from the cache, e.g. when the system is low on memory.
+     */
+    public void evictAll() {
+        mBitmaps.evictAll();
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.Canvas;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+
+/**
+ * {@link OverlayLayer} that fades an edge of the image into a color, usually to make
+ * text or toolbars on top of the image readable.
+ */
+public class ScrimOverlay extends OverlayLayer {
+
+    /** The scrim covers the top of the view. */
+    public static final int EDGE_TOP = 0;
+    /** The scrim covers the bottom of the view. */
+    public static final int EDGE_BOTTOM = 1;
+
+    /** The paint that holds the gradient shader. */
+    private final Paint mPaint = new Paint();
+
+    /** The edge the scrim covers, one of {@link #EDGE_TOP} or {@link #EDGE_BOTTOM}. */
+    private final int mEdge;
+    /** The fraction of the view height the scrim covers. */
+    private final float mSize;
+    /** The color of the scrim at the edge. It fades to transparent towards the center. */
+    private int mColor;
+
+    /** The area covered by the scrim, computed when the layer is built. */
+    private float mTop;
+    private float mBottom;
+    private float mRight;
+
+
+    /**
+     * Creates a scrim.
+     * @param edge one of {@link #EDGE_TOP} or {@link #EDGE_BOTTOM}.
+     * @param size the fraction of the view height the scrim covers.
+     * @param color the color of the scrim at the edge.
+     */
+    public ScrimOverlay(int edge, float size, int color) {
+        mEdge = edge;
+        mSize = size;
+        mColor = color;
+    }
+
+
+    /**
+     * Changes the color of the scrim at the edge.
+     * @param color the new color.
+     */
+    public void setColor(int color) {
+        if (color != mColor) {
+            mColor = color;
+            invalidateLayer();
+        }
+    }
+
+
+    @Override
+    protected void onBuild(int width, int height) {
+        float scrimHeight = mSize * height;
+        int transparent = mColor & 0x00FFFFFF;
+        mRight = width;
+        if (mEdge == EDGE_TOP) {
+            mTop = 0;
+            mBottom = scrimHeight;
+            mPaint.setShader(new LinearGradient(0, mTop, 0, mBottom,
+                    mColor, transparent, Shader.TileMode.CLAMP));
+        } else {
+            mTop = height - scrimHeight;
+            mBottom = height;
+            mPaint.setShader(new LinearGradient(0, mTop, 0, mBottom,
+                    transparent, mColor, Shader.TileMode.CLAMP));
+        }
+    }
+
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        canvas.drawRect(0, mTop, mRight, mBottom, mPaint);
+    }
+}
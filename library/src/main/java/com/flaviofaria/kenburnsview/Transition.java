@@ -108,6 +108,18 @@ public class Transition {
     }
 
 
+    /**
+     * Checks whether this transition only pans, i.e. whether its source and
+     * destiny rects have nearly the same size.
+     * @param tolerance the maximum size difference, relative to the source rect size.
+     * @return {@code true} if the rects differ in size by up to {@code tolerance}.
+     */
+    public boolean isPanOnly(float tolerance) {
+        return Math.abs(mWidthDiff) <= tolerance * mSrcRect.width()
+                && Math.abs(mHeightDiff) <= tolerance * mSrcRect.height();
+    }
+
+
     /**
      * Gets the duration of this transition.
      * @return the duration, in milliseconds.
@@ -116,4 +128,13 @@ public class Transition {
         return mDuration;
     }
 
+
+    /**
+     * Gets the {@link Interpolator} of this transition.
+     * @return the interpolator.
+     */
+    public Interpolator getInterpolator() {
+        return mInterpolator;
+    }
+
 }
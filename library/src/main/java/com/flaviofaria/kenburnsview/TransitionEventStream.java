@@ -0,0 +1,347 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.RectF;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer, single-consumer stream of animation events. A {@link KenBurnsView}
+ * writes events into a preallocated lock-free ring buffer without allocating, and a
+ * background thread drains them in batches into an {@link EventConsumer}. This keeps
+ * slow consumers, like analytics, off the frame that produced the events.
+ * <p>
+ * When the consumer can't keep up and the buffer is full, new events are dropped
+ * and counted by {@link #getOverflowCount()}.
+ */
+public class TransitionEventStream {
+
+    /** A transition started. */
+    public static final int EVENT_TRANSITION_START = 0;
+    /** A transition ended. */
+    public static final int EVENT_TRANSITION_END = 1;
+    /** A frame was drawn. */
+    public static final int EVENT_FRAME = 2;
+    /** The animation was paused. */
+    public static final int EVENT_PAUSE = 3;
+    /** The animation was resumed. */
+    public static final int EVENT_RESUME = 4;
+    /** The image was changed. */
+    public static final int EVENT_IMAGE_CHANGE = 5;
+
+    /** Default interval, in milliseconds, between a pair of drains. */
+    public static final long DEFAULT_DRAIN_INTERVAL = 100;
+
+    /** The preallocated event records. */
+    private final Event[] mEvents;
+
+    /** Mask to turn a sequence number into an index of {@link #mEvents}. */
+    private final int mMask;
+
+    /** Sequence number of the next event to be written. Only written by the producer. */
+    private final AtomicLong mHead = new AtomicLong();
+    /** Sequence number of the next event to be read. Only written by the consumer. */
+    private final AtomicLong mTail = new AtomicLong();
+
+    /** Amount of events dropped because the buffer was full. Only written by the producer. */
+    private volatile long mOverflowCount;
+
+    /** The consumer events are drained into. */
+    private final EventConsumer mConsumer;
+
+    /** Interval, in milliseconds, between a pair of drains. */
+    private final long mDrainInterval;
+
+    /** The thread that drains events into {@link #mConsumer}, while started. */
+    private volatile Thread mConsumerThread;
+
+
+    public TransitionEventStream(int capacity, EventConsumer consumer) {
+        this(capacity, consumer, DEFAULT_DRAIN_INTERVAL);
+    }
+
+
+    /**
+     * Creates a stream.
+     * @param capacity the maximum amount of events waiting to be consumed.
+     *                 It's rounded up to a power of two.
+     * @param consumer the consumer events are drained into.
+     * @param drainInterval the interval, in milliseconds, between a pair of drains.
+     */
+    public TransitionEventStream(int capacity, EventConsumer consumer, long drainInterval) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        mEvents = new Event[size];
+        for (int i = 0; i < size; i++) {
+            mEvents[i] = new Event();
+        }
+        mMask = size - 1;
+        mConsumer = consumer;
+        mDrainInterval = drainInterval;
+    }
+
+
+    /**
+     * Starts the background thread that drains events into the consumer.
+     */
+    public synchronized void start() {
+        if (mConsumerThread != null) {
+            return;
+        }
+        mConsumerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Thread current = Thread.currentThread();
+                while (mConsumerThread == current) {
+                    drain();
+                    LockSupport.parkNanos(mDrainInterval * 1000000L);
+                }
+                drain(); // Delivers whatever was written before stopping.
+            }
+        }, "TransitionEventStream");
+        mConsumerThread.setDaemon(true);
+        mConsumerThread.start();
+    }
+
+
+    /**
+     * Stops the background thread after it drains the pending events.
+     */
+    public synchronized void stop() {
+        Thread thread = mConsumerThread;
+        mConsumerThread = null;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+
+    /**
+     * Writes an event into the buffer. Must only be called by the producer thread.
+     * Only the values are copied, so the producer can keep reusing {@code rect}.
+     * @param type one of the {@code EVENT_*} constants.
+     * @param time the time of the event, in milliseconds.
+     * @param rect the rect shown when the event happened, in pixels of the drawable,
+     *             or {@code null} if the event refers to no transition.
+     * @param elapsedTime the progress of the transition, in milliseconds.
+     * @param duration the duration of the transition, in milliseconds.
+     * @return {@code true} if the event was written, {@code false} if it was
+     * dropped because the buffer is full.
+     */
+    public boolean publish(int type, long time, RectF rect, long elapsedTime, long duration) {
+        long head = mHead.get();
+        if (head - mTail.get() > mMask) {
+            mOverflowCount++; // Single writer, so this doesn't race.
+            return false;
+        }
+        Event event = mEvents[(int) (head & mMask)];
+        event.mType = type;
+        event.mTime = time;
+        event.mElapsedTime = elapsedTime;
+        event.mDuration = duration;
+        event.mHasTransition = rect != null;
+        if (rect != null) {
+            event.mLeft = rect.left;
+            event.mTop = rect.top;
+            event.mRight = rect.right;
+            event.mBottom = rect.bottom;
+            event.mProgress = duration > 0 ? Math.min(elapsedTime / (float) duration, 1) : 1;
+        }
+        // Makes the event visible to the consumer only after it's fully written.
+        mHead.lazySet(head + 1);
+        return true;
+    }
+
+
+    /**
+     * Delivers all pending events to the consumer as a batch. Must only be called
+     * by the consumer thread, which is the background thread while started.
+     * @return the amount of events delivered.
+     */
+    public int drain() {
+        long tail = mTail.get();
+        long head = mHead.get();
+        if (tail == head) {
+            return 0;
+        }
+        for (long seq = tail; seq < head; seq++) {
+            mConsumer.onEvent(mEvents[(int) (seq & mMask)]);
+        }
+        mConsumer.onBatchEnd(mOverflowCount);
+        // Releases the slots back to the producer only after they were consumed.
+        mTail.lazySet(head);
+        return (int) (head - tail);
+    }
+
+
+    /**
+     * Gets the amount of events dropped because the buffer was full.
+     * @return the amount of dropped events.
+     */
+    public long getOverflowCount() {
+        return mOverflowCount;
+    }
+
+
+    /**
+     * A record of the event stream. Records are reused, so they must not be
+     * retained after {@link EventConsumer#onEvent(Event)} returns.
+     */
+    public static final class Event {
+
+        /** One of the {@code EVENT_*} constants. */
+        private int mType;
+        /** The time of the event, in milliseconds. */
+        private long mTime;
+        /** Whether the event refers to a transition. */
+        private boolean mHasTransition;
+        /** The progress of the transition, in milliseconds. */
+        private long mElapsedTime;
+        /** The duration of the transition, in milliseconds. */
+        private long mDuration;
+        /** The progress of the transition, from {@code 0} to {@code 1}. */
+        private float mProgress;
+        /** The left coordinate of the rect shown when the event happened. */
+        private float mLeft;
+        /** The top coordinate of the rect shown when the event happened. */
+        private float mTop;
+        /** The right coordinate of the rect shown when the event happened. */
+        private float mRight;
+        /** The bottom coordinate of the rect shown when the event happened. */
+        private float mBottom;
+
+
+        private Event() {
+        }
+
+
+        /**
+         * Gets the type of this event.
+         * @return one of the {@code EVENT_*} constants.
+         */
+        public int getType() {
+            return mType;
+        }
+
+
+        /**
+         * Gets the time of this event.
+         * @return the time, in milliseconds, according to the animation clock.
+         */
+        public long getTime() {
+            return mTime;
+        }
+
+
+        /**
+         * Checks whether this event refers to a transition. If it doesn't, the
+         * transition getters of this event are meaningless.
+         * @return {@code true} if it does, {@code false} otherwise.
+         */
+        public boolean hasTransition() {
+            return mHasTransition;
+        }
+
+
+        /**
+         * Gets the progress of the transition when this event happened.
+         * @return the elapsed time, in milliseconds, since the transition started.
+         */
+        public long getElapsedTime() {
+            return mElapsedTime;
+        }
+
+
+        /**
+         * Gets the duration of the transition.
+         * @return the duration, in milliseconds.
+         */
+        public long getDuration() {
+            return mDuration;
+        }
+
+
+        /**
+         * Gets the progress of the transition when this event happened.
+         * @return the progress, from {@code 0} to {@code 1}.
+         */
+        public float getProgress() {
+            return mProgress;
+        }
+
+
+        /**
+         * Gets the left coordinate of the rect shown when this event happened.
+         * @return the coordinate, in pixels of the drawable.
+         */
+        public float getLeft() {
+            return mLeft;
+        }
+
+
+        /**
+         * Gets the top coordinate of the rect shown when this event happened.
+         * @return the coordinate, in pixels of the drawable.
+         */
+        public float getTop() {
+            return mTop;
+        }
+
+
+        /**
+         * Gets the right coordinate of the rect shown when this event happened.
+         * @return the coordinate, in pixels of the drawable.
+         */
+        public float getRight() {
+            return mRight;
+        }
+
+
+        /**
+         * Gets the bottom coordinate of the rect shown when this event happened.
+         * @return the coordinate, in pixels of the drawable.
+         */
+        public float getBottom() {
+            return mBottom;
+        }
+    }
+
+
+    /**
+     * An event consumer receives the events of the stream in batches, on the
+     * background thread.
+     */
+    public interface EventConsumer {
+        /**
+         * Delivers an event of the current batch.
+         * @param event the event. It must not be retained after this call returns.
+         */
+        public void onEvent(Event event);
+
+        /**
+         * Notifies the end of a batch.
+         * @param overflowCount the total amount of events dropped so far.
+         */
+        public void onBatchEnd(long overflowCount);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.RectF;
+
+/**
+ * A deterministic sequence of transitions generated by a seeded
+ * {@link RandomTransitionGenerator}. Each rect of the sequence is generated from a seed
+ * derived from the timeline seed and the rect index, and each transition goes from the
+ * previous rect to the next one. The state of the generator is therefore checkpointed at
+ * every transition for free: any transition can be generated on its own, without the ones
+ * before it. Since all transitions last the same, any playback time is resolved into a
+ * transition and its progress in constant time, and only the transition being played is
+ * kept in memory, however long the timeline plays.
+ * <p>
+ * The sequence is a function of the seed and the bounds it's played on only,
+ * so seeking to the same time always shows the same frame.
+ */
+public class TransitionTimeline {
+
+    /** The generator the rects of this timeline come from. */
+    private final RandomTransitionGenerator mTransGen;
+
+    /** The seed the transition sequence is generated from. */
+    private final long mSeed;
+
+    /** The duration, in milliseconds, of every transition. */
+    private final long mDuration;
+
+    /** The index of {@link #mTransition}, or {@code -1} if none was generated yet. */
+    private long mIndex = -1;
+
+    /** The last transition generated. */
+    private Transition mTransition;
+
+    /** The drawable bounds the transitions are generated for. */
+    private final RectF mDrawableBounds = new RectF();
+
+    /** The viewport the transitions are generated for. */
+    private final RectF mViewport = new RectF();
+
+
+    /**
+     * Creates a timeline. Its transitions last the duration the generator is set to
+     * at this point.
+     * @param transGen the generator the rects come from. It shouldn't be shared with a view
+     *                 outside timeline mode, since it's reseeded for every rect.
+     * @param seed the seed of the transition sequence.
+     */
+    public TransitionTimeline(RandomTransitionGenerator transGen, long seed) {
+        if (transGen.getTransitionDuration() <= 0) {
+            throw new IllegalStateException("Timeline transitions must have a positive duration");
+        }
+        mTransGen = transGen;
+        mSeed = seed;
+        mDuration = transGen.getTransitionDuration();
+    }
+
+
+    /**
+     * Gets the seed the transition sequence is generated from.
+     * @return the seed.
+     */
+    public long getSeed() {
+        return mSeed;
+    }
+
+
+    /**
+     * Sets the bounds the transitions are generated for. If they are different from
+     * the current ones, the timeline is regenerated from its seed.
+     * @param drawableBounds the bounds of the drawable to be animated.
+     * @param viewport the bounds of the view the drawable is animated in.
+     */
+    public void setBounds(RectF drawableBounds, RectF viewport) {
+        if (drawableBounds.equals(mDrawableBounds) && viewport.equals(mViewport)) {
+            return;
+        }
+        mDrawableBounds.set(drawableBounds);
+        mViewport.set(viewport);
+        mIndex = -1;
+        mTransition = null;
+    }
+
+
+    /**
+     * Gets the index of the transition that is playing at a given time.
+     * @param time the playback time, in milliseconds.
+     * @return the index of the transition playing at {@code time}. It's a {@code long},
+     *         since timelines anchored to an epoch-based clock, or made of short
+     *         transitions, may play more transitions than an {@code int} counts.
+     */
+    public long getTransitionIndex(long time) {
+        if (mDrawableBounds.isEmpty() || mViewport.isEmpty()) {
+            throw new IllegalStateException("Timeline bounds must be set before seeking");
+        }
+        return Math.max(time, 0) / mDuration;
+    }
+
+
+    /**
+     * Gets a transition of this timeline. The same instance is returned for the
+     * transition being played until another one is requested.
+     * @param index the index of the transition, as returned by
+     *              {@link #getTransitionIndex(long)}.
+     * @return the transition at {@code index}.
+     */
+    public Transition getTransition(long index) {
+        if (index != mIndex) {
+            RectF srcRect = index == mIndex + 1 && mTransition != null
+                    ? mTransition.getDestinyRect() : generateRect(index - 1);
+            mTransition = new Transition(srcRect, generateRect(index), mDuration,
+                    mTransGen.getTransitionInterpolator());
+            mIndex = index;
+        }
+        return mTransition;
+    }
+
+
+    /**
+     * Gets the time a transition of this timeline starts at.
+     * @param index the index of the transition, as returned by
+     *              {@link #getTransitionIndex(long)}.
+     * @return the start time, in milliseconds.
+     */
+    public long getStartTime(long index) {
+        return index * mDuration;
+    }
+
+
+    /**
+     * Generates the rect the transition at a given index ends at, and the next one starts from.
+     * @param index the index of the rect. The first transition starts from rect {@code -1}.
+     * @return the rect.
+     */
+    private RectF generateRect(long index) {
+        mTransGen.setSeed(mix(mSeed + (index + 1) * 0x9E3779B97F4A7C15L));
+        return mTransGen.generateRandomRect(mDrawableBounds, mViewport);
+    }
+
+
+    /**
+     * Scrambles the bits of a seed, so consecutive rect seeds don't yield
+     * correlated random sequences.
+     * @param seed the seed to be scrambled.
+     * @return the scrambled seed.
+     */
+    private static long mix(long seed) {
+        seed = (seed ^ (seed >>> 30)) * 0xBF58476D1CE4E5B9L;
+        seed = (seed ^ (seed >>> 27)) * 0x94D049BB133111EBL;
+        return seed ^ (seed >>> 31);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RadialGradient;
+import android.graphics.Shader;
+
+/**
+ * {@link OverlayLayer} that darkens the corners of the image.
+ */
+public class VignetteOverlay extends OverlayLayer {
+
+    /** The paint that holds the gradient shader. */
+    private final Paint mPaint = new Paint();
+
+    /** The color of the corners. */
+    private int mColor;
+
+    /** The fraction of the distance from the center to the corners
+     *  that is kept clear. */
+    private final float mClearFraction;
+
+    /** The size of the view, stored when the layer is built. */
+    private float mWidth;
+    private float mHeight;
+
+
+    /**
+     * Creates a vignette.
+     * @param color the color of the corners.
+     * @param clearFraction the fraction of the distance from the center to the corners
+     *                      that is kept clear, from {@code 0} to {@code 1}.
+     */
+    public VignetteOverlay(int color, float clearFraction) {
+        mColor = color;
+        mClearFraction = clearFraction;
+    }
+
+
+    /**
+     * Changes the color of the corners.
+     * @param color the new color.
+     */
+    public void setColor(int color) {
+        if (color != mColor) {
+            mColor = color;
+            invalidateLayer();
+        }
+    }
+
+
+    @Override
+    protected void onBuild(int width, int height) {
+        mWidth = width;
+        mHeight = height;
+        float radius = (float) Math.sqrt(width * width + height * height) / 2;
+        int[] colors = {mColor & 0x00FFFFFF, mColor & 0x00FFFFFF, mColor};
+        float[] positions = {0, mClearFraction, 1};
+        mPaint.setShader(new RadialGradient(width / 2f, height / 2f, radius,
+                colors, positions, Shader.TileMode.CLAMP));
+    }
+
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        canvas.drawRect(0, 0, mWidth, mHeight, mPaint);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.RectF;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a {@link ClockSyncServer} and several {@link ClockSyncClient}s over loopback, and
+ * checks that the clients align to the server clock within a frame and play the same
+ * {@link TransitionTimeline} frame.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class ClockSyncLoopbackTest {
+
+    /** Offset of the server clock to the system clock, in milliseconds. */
+    private static final long SERVER_OFFSET = 5000;
+    /** Amount of clients, standing for the devices of a video wall. */
+    private static final int CLIENTS = 4;
+    /** Interval, in milliseconds, between a pair of probes. */
+    private static final long PROBE_INTERVAL = 50;
+    /** Maximum time, in milliseconds, the clients are given to synchronize. */
+    private static final long SYNC_TIMEOUT = 5000;
+    /** Maximum misalignment, in milliseconds: one frame at 60 fps. */
+    private static final long FRAME_TIME = 16;
+
+    private ClockSyncServer mServer;
+    private final List<ClockSyncClient> mClients = new ArrayList<ClockSyncClient>();
+
+
+    @After
+    public void tearDown() {
+        for (ClockSyncClient client : mClients) {
+            client.stop();
+        }
+        if (mServer != null) {
+            mServer.stop();
+        }
+    }
+
+
+    @Test(timeout = 30000)
+    public void clientsAlignWithinAFrame() throws Exception {
+        final AnimationClock serverClock = new AnimationClock() {
+            @Override
+            public long currentTimeMillis() {
+                return System.currentTimeMillis() + SERVER_OFFSET;
+            }
+        };
+        mServer = new ClockSyncServer(0, serverClock);
+        mServer.start();
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", mServer.getPort());
+        for (int i = 0; i < CLIENTS; i++) {
+            ClockSyncClient client = new ClockSyncClient(address, PROBE_INTERVAL);
+            client.start();
+            mClients.add(client);
+        }
+
+        long deadline = System.currentTimeMillis() + SYNC_TIMEOUT;
+        for (ClockSyncClient client : mClients) {
+            while (!client.isSynchronized() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(PROBE_INTERVAL);
+            }
+            assertTrue("A client didn't synchronize", client.isSynchronized());
+        }
+        // Lets a few more probes in, so the estimates settle on the shortest round trips.
+        Thread.sleep(PROBE_INTERVAL * 10);
+
+        for (ClockSyncClient client : mClients) {
+            long error = client.currentTimeMillis() - serverClock.currentTimeMillis();
+            assertTrue("Client off by " + error + " ms", Math.abs(error) <= FRAME_TIME);
+        }
+
+        // Clients sharing a seed and a start time show the same frame.
+        long startTime = serverClock.currentTimeMillis() - 123456;
+        RectF drawable = new RectF(0, 0, 1920, 1080);
+        RectF viewport = new RectF(0, 0, 800, 480);
+        RectF expected = null;
+        long expectedTime = 0;
+        for (ClockSyncClient client : mClients) {
+            TransitionTimeline timeline =
+                    new TransitionTimeline(new RandomTransitionGenerator(), 42);
+            timeline.setBounds(drawable, viewport);
+            long playbackTime = client.currentTimeMillis() - startTime;
+            long index = timeline.getTransitionIndex(playbackTime);
+            RectF rect = new RectF(timeline.getTransition(index)
+                    .getInterpolatedRect(playbackTime - timeline.getStartTime(index)));
+            if (expected == null) {
+                expected = rect;
+                expectedTime = playbackTime;
+            } else {
+                assertTrue(Math.abs(playbackTime - expectedTime) <= 2 * FRAME_TIME);
+                // A couple of frames of motion at most.
+                assertEquals(expected.centerX(), rect.centerX(), 2);
+                assertEquals(expected.centerY(), rect.centerY(), 2);
+                assertEquals(expected.width(), rect.width(), 2);
+            }
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2014 Flavio Faria
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.flaviofaria.kenburnsview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import android.view.animation.LinearInterpolator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Frame loop macrobenchmark. Drives {@link KenBurnsView#onDraw(Canvas)} with a simulated
+ * clock through a long session of transition rollovers, image swaps, resizes and
+ * pause/resume cycles covering hours of playback, measuring the CPU time and allocations
+ * of every frame and checking the frame invariants. The build fails when an invariant or
+ * the allocation budget is broken.
+ * <p>
+ * CPU time depends on the machine, so the CPU budgets are only checked when the
+ * {@code kenburnsview.benchmark.cpuBudgets} system property is {@code true}, which
+ * {@code ./gradlew check -PbenchmarkCpuBudgets} sets. Budgets can be overridden with the
+ * system properties named after their constants, e.g.
+ * {@code -Dkenburnsview.benchmark.meanCpuMicros=800}.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class FrameLoopBenchmarkTest {
+
+    /** Frames of the simulated session. */
+    private static final int FRAMES = 120000;
+    /** Simulated times between frames, in milliseconds, cycled through: mostly 60 FPS
+     *  frames, with dropped frames and half second stalls, so the session covers hours. */
+    private static final long[] FRAME_TIMES = {16, 16, 33, 16, 500};
+    /** Minimum simulated playback the session has to cover, in milliseconds. */
+    private static final long MIN_SESSION_DURATION = 3 * 60 * 60 * 1000L;
+    /** Duration, in milliseconds, of the generated transitions. Short, to roll over often. */
+    private static final long TRANSITION_DURATION = 480;
+
+    /** Every how many frames the image is swapped. */
+    private static final int IMAGE_SWAP_INTERVAL = 1499;
+    /** Every how many frames the view is resized. */
+    private static final int RESIZE_INTERVAL = 2311;
+    /** Every how many frames the animation is paused, and for how many frames. */
+    private static final int PAUSE_INTERVAL = 701;
+    private static final int PAUSE_LENGTH = 37;
+    /** Every how many frames the clock leaps ahead by several transitions. */
+    private static final int CLOCK_LEAP_INTERVAL = 997;
+
+    /** Whether the CPU budgets are checked. */
+    private static final boolean CPU_BUDGETS =
+            Boolean.getBoolean("kenburnsview.benchmark.cpuBudgets");
+    /** Budget of the mean CPU time per frame, in microseconds. The CPU budgets leave
+     *  room over Robolectric 3.0 runs on JDK 8, which measured a mean of 200-270 us
+     *  and a p99 of 500-600 us. */
+    private static final long MEAN_CPU_MICROS =
+            Long.getLong("kenburnsview.benchmark.meanCpuMicros", 500);
+    /** Budget of the 99th percentile CPU time per frame, in microseconds. */
+    private static final long P99_CPU_MICROS =
+            Long.getLong("kenburnsview.benchmark.p99CpuMicros", 1500);
+    /** Budget of the mean allocations per frame, in bytes. */
+    private static final long MEAN_ALLOCATED_BYTES =
+            Long.getLong("kenburnsview.benchmark.meanAllocatedBytes", 16 * 1024);
+    /** Minimum transition rollovers the session has to go through to be meaningful. */
+    private static final int MIN_ROLLOVERS = 20000;
+
+    /** Tolerance, in pixels, of the rect bounds checks. */
+    private static final float BOUNDS_TOLERANCE = 0.5f;
+
+    /** Image sizes swapped in, including ratios different from the viewports. */
+    private static final int[][] IMAGE_SIZES = {{640, 480}, {1024, 1024}, {300, 900}, {1920, 1080}};
+    /** View sizes resized to. */
+    private static final int[][] VIEW_SIZES = {{480, 800}, {800, 480}, {320, 320}};
+
+    private SimulatedClock mClock;
+    private KenBurnsView mView;
+    private final List<String> mViolations = new ArrayList<String>();
+    private int mRollovers;
+    private long mFrame;
+
+
+    @Before
+    public void setUp() {
+        mClock = new SimulatedClock();
+        mView = new KenBurnsView(RuntimeEnvironment.application);
+        mView.setAnimationClock(mClock);
+        mView.setPanFastPathEnabled(false); // Builds off the UI thread.
+        mView.setTransitionGenerator(new RandomTransitionGenerator(TRANSITION_DURATION,
+                new LinearInterpolator()));
+        mView.setTransitionListener(new KenBurnsView.TransitionListener() {
+            @Override
+            public void onTransitionStart(Transition transition) {
+                if (transition == null || transition.getDuration() <= 0) {
+                    violation("invalid transition started: " + transition);
+                }
+            }
+
+            @Override
+            public void onTransitionEnd(Transition transition) {
+                mRollovers++;
+            }
+        });
+        mView.setProgressListener(new KenBurnsView.ProgressListener() {
+            @Override
+            public void onTransitionProgress(float progress, float left, float top,
+                                             float right, float bottom, float scale) {
+                checkFrame(progress, left, top, right, bottom, scale);
+            }
+        });
+        swapImage(0);
+        resize(0);
+    }
+
+
+    @Test
+    public void frameLoopStaysWithinBudget() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean measuresAllocations = threads instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported();
+        long threadId = Thread.currentThread().getId();
+
+        long[] cpuNanos = new long[FRAMES];
+        long allocatedBytes = 0;
+        Bitmap target = Bitmap.createBitmap(1, 1, Bitmap.Config.RGB_565);
+        long sessionStart = mClock.currentTimeMillis();
+        for (int i = 0; i < FRAMES; i++) {
+            mFrame = i;
+            script(i);
+            mClock.advance(FRAME_TIMES[i % FRAME_TIMES.length]);
+            // A fresh canvas, so the draw history of test canvases doesn't pile up.
+            Canvas canvas = new Canvas(target);
+
+            long allocatedBefore = measuresAllocations
+                    ? ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(threadId)
+                    : 0;
+            long cpuBefore = threads.getCurrentThreadCpuTime();
+            try {
+                mView.onDraw(canvas);
+            } catch (RuntimeException e) {
+                violation(e.toString());
+            }
+            cpuNanos[i] = threads.getCurrentThreadCpuTime() - cpuBefore;
+            if (measuresAllocations) {
+                allocatedBytes += ((com.sun.management.ThreadMXBean) threads)
+                        .getThreadAllocatedBytes(threadId) - allocatedBefore;
+            }
+        }
+
+        long totalCpu = 0;
+        for (long nanos : cpuNanos) {
+            totalCpu += nanos;
+        }
+        Arrays.sort(cpuNanos);
+        long meanCpuMicros = totalCpu / FRAMES / 1000;
+        long p99CpuMicros = cpuNanos[(int) (FRAMES * 0.99)] / 1000;
+        long meanAllocated = allocatedBytes / FRAMES;
+        long sessionDuration = mClock.currentTimeMillis() - sessionStart;
+        System.out.println("KenBurnsView frame loop: " + FRAMES + " frames over "
+                + sessionDuration / 60000 + " simulated minutes, " + mRollovers
+                + " rollovers, mean CPU " + meanCpuMicros + " us, p99 CPU " + p99CpuMicros
+                + " us, mean allocations " + (measuresAllocations ? meanAllocated + " B" : "n/a")
+                + ", " + mViolations.size() + " invariant violations");
+
+        if (!mViolations.isEmpty()) {
+            fail(mViolations.size() + " invariant violations, first ones: "
+                    + mViolations.subList(0, Math.min(mViolations.size(), 10)));
+        }
+        assertTrue("Only " + mRollovers + " rollovers", mRollovers >= MIN_ROLLOVERS);
+        assertTrue("Only " + sessionDuration + " ms of playback",
+                sessionDuration >= MIN_SESSION_DURATION);
+        if (CPU_BUDGETS) {
+            assertTrue("Mean CPU per frame " + meanCpuMicros + " us exceeds the budget of "
+                    + MEAN_CPU_MICROS + " us", meanCpuMicros <= MEAN_CPU_MICROS);
+            assertTrue("p99 CPU per frame " + p99CpuMicros + " us exceeds the budget of "
+                    + P99_CPU_MICROS + " us", p99CpuMicros <= P99_CPU_MICROS);
+        }
+        if (measuresAllocations) {
+            assertTrue("Mean allocations per frame " + meanAllocated + " B exceed the budget of "
+                    + MEAN_ALLOCATED_BYTES + " B", meanAllocated <= MEAN_ALLOCATED_BYTES);
+        }
+    }
+
+
+    /**
+     * Applies the session events scheduled for a frame.
+     * @param frame the frame index.
+     */
+    private void script(int frame) {
+        if (frame > 0 && frame % IMAGE_SWAP_INTERVAL == 0) {
+            swapImage(frame / IMAGE_SWAP_INTERVAL);
+        }
+        if (frame > 0 && frame % RESIZE_INTERVAL == 0) {
+            resize(frame / RESIZE_INTERVAL);
+        }
+        if (frame % PAUSE_INTERVAL == PAUSE_INTERVAL - PAUSE_LENGTH) {
+            mView.pause();
+        } else if (frame % PAUSE_INTERVAL == 0) {
+            mView.resume();
+        }
+        if (frame > 0 && frame % CLOCK_LEAP_INTERVAL == 0) {
+            mClock.advance(3 * TRANSITION_DURATION);
+        }
+    }
+
+
+    private void swapImage(int index) {
+        int[] size = IMAGE_SIZES[index % IMAGE_SIZES.length];
+        mView.setImageBitmap(Bitmap.createBitmap(size[0], size[1], Bitmap.Config.RGB_565));
+    }
+
+
+    private void resize(int index) {
+        int[] size = VIEW_SIZES[index % VIEW_SIZES.length];
+        mView.layout(0, 0, size[0], size[1]);
+    }
+
+
+    /**
+     * Checks the invariants of a frame: the rect lies within the drawable, has the
+     * aspect ratio of the view, and the progress and scale are sane.
+     */
+    private void checkFrame(float progress, float left, float top,
+                            float right, float bottom, float scale) {
+        Drawable d = mView.getDrawable();
+        float width = d.getIntrinsicWidth();
+        float height = d.getIntrinsicHeight();
+        if (left < -BOUNDS_TOLERANCE || top < -BOUNDS_TOLERANCE
+                || right > width + BOUNDS_TOLERANCE || bottom > height + BOUNDS_TOLERANCE) {
+            violation("rect [" + left + ", " + top + ", " + right + ", " + bottom
+                    + "] out of the " + width + "x" + height + " drawable");
+        }
+        float rectRatio = (right - left) / (bottom - top);
+        float viewRatio = mView.getWidth() / (float) mView.getHeight();
+        if (Math.abs(rectRatio / viewRatio - 1) > 0.01f) {
+            violation("rect ratio " + rectRatio + " differs from the view ratio " + viewRatio);
+        }
+        if (progress < 0 || progress > 1) {
+            violation("progress " + progress);
+        }
+        if (!(scale > 0) || Float.isInfinite(scale)) {
+            violation("scale " + scale);
+        }
+    }
+
+
+    private void violation(String description) {
+        mViolations.add("frame " + mFrame + ": " + description);
+    }
+
+
+    /**
+     * Clock that only moves when told to.
+     */
+    private static class SimulatedClock implements AnimationClock {
+
+        private long mTime = 1000000;
+
+        @Override
+        public long currentTimeMillis() {
+            return mTime;
+        }
+
+        void advance(long millis) {
+            mTime += millis;
+        }
+    }
+}